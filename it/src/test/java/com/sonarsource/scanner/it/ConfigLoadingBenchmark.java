@@ -0,0 +1,105 @@
+/*
+ * SonarSource :: IT :: SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.sonarsource.scanner.it;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the configuration loading of the scanner on projects generated by {@link SyntheticProject} with 10, 1k
+ * and 10k modules, declared with {@code sonar.modules} or discovered. The CLI jar built in {@code ../target} is run
+ * with {@code sonar.scanner.skip=true}, which loads the configuration without contacting the server, and the median
+ * configuration time of several runs is printed.
+ * <p>
+ * Not part of {@link SonarScannerTestSuite}, run it with {@code mvn test -Dtest=ConfigLoadingBenchmark}.
+ */
+public class ConfigLoadingBenchmark {
+
+  private static final int[] MODULES = {10, 1_000, 10_000};
+  private static final int WARMUP_RUNS = 1;
+  private static final int MEASURED_RUNS = 5;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void benchmark_configuration_loading() throws Exception {
+    File cliJar = cliJar();
+    List<String> report = new ArrayList<>();
+    report.add(String.format("%-10s %-12s %12s %12s %12s", "modules", "declaration", "min (ms)", "median (ms)", "max (ms)"));
+    for (int modules : MODULES) {
+      for (boolean declared : new boolean[] {true, false}) {
+        SyntheticProject project = SyntheticProject.withModules(modules).declaredModules(declared).symlinks(!declared);
+        Path baseDir = project.generate(temp.newFolder().toPath());
+        long[] times = new long[MEASURED_RUNS];
+        for (int i = -WARMUP_RUNS; i < MEASURED_RUNS; i++) {
+          long time = run(cliJar, baseDir, declared);
+          if (i >= 0) {
+            times[i] = time;
+          }
+        }
+        Arrays.sort(times);
+        report.add(String.format("%-10d %-12s %12d %12d %12d", project.moduleCount(), declared ? "declared" : "discovered",
+          times[0], times[MEASURED_RUNS / 2], times[MEASURED_RUNS - 1]));
+      }
+    }
+    report.forEach(System.out::println);
+  }
+
+  private long run(File cliJar, Path baseDir, boolean declared) throws IOException, InterruptedException {
+    Path summary = temp.getRoot().toPath().resolve("summary.json");
+    List<String> command = new ArrayList<>(Arrays.asList(
+      System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+      "-jar", cliJar.getAbsolutePath(),
+      "-Dsonar.scanner.skip=true",
+      "-Dproject.home=" + baseDir,
+      "-Dsonar.userHome=" + temp.getRoot(),
+      "-Dsonar.scanner.summaryFile=" + summary));
+    if (!declared) {
+      command.add("-Dsonar.scanner.discoverModules=true");
+    }
+    Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectErrorStream(true).start();
+    assertThat(process.waitFor(5, TimeUnit.MINUTES)).isTrue();
+    assertThat(process.exitValue()).isZero();
+    return LargeProjectTest.configurationTime(summary).toMillis();
+  }
+
+  private static File cliJar() throws IOException {
+    Properties props = new Properties();
+    try (FileInputStream fis = new FileInputStream(new File("../target/maven-archiver/pom.properties"))) {
+      props.load(fis);
+    }
+    File jar = new File("../target/" + props.getProperty("artifactId") + "-" + props.getProperty("version") + ".jar");
+    assertThat(jar).as("build the scanner first").exists();
+    return jar;
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * SonarSource :: IT :: SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.sonarsource.scanner.it;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.sonar.orchestrator.build.BuildResult;
+import com.sonar.orchestrator.build.SonarScanner;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs analyses through a {@link ProxyServer} that degrades the network with {@link NetworkConditions}, and checks
+ * that the bootstrap and the upload of the analysis report stay within time budgets, so that regressions in the
+ * timeout and retry behaviour are caught before release.
+ */
+public class DegradedNetworkTest extends ScannerTestCase {
+
+  private static final Duration BOOTSTRAP_BUDGET = Duration.ofSeconds(60);
+  private static final Duration UPLOAD_BUDGET = Duration.ofSeconds(20);
+  private static final Duration FAILURE_BUDGET = Duration.ofSeconds(30);
+
+  private static final Pattern BOOTSTRAP_TIME = Pattern.compile("\"name\": \"bootstrap\",\\s*\"timeMs\": (\\d+)");
+  private static final Pattern UPLOAD_TIME = Pattern.compile("Analysis report uploaded in (\\d+)ms");
+
+  private static final String SERVER_KEYSTORE = "/ProxyTest/server.p12";
+  private static final String SERVER_KEYSTORE_PASSWORD = "pwdServerP12";
+  private static final String KEYSTORE_CLIENT_WITH_CA = "/ProxyTest/client-with-ca-keytool.p12";
+  private static final String KEYSTORE_CLIENT_WITH_CA_PASSWORD = "pwdClientCAP12";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ProxyServer proxyServer;
+  private static final WireMockServer httpsReverseProxy = new WireMockServer(WireMockConfiguration.wireMockConfig()
+    .dynamicHttpsPort()
+    .keystorePath(getResourcePath(SERVER_KEYSTORE).toString())
+    .keystorePassword(SERVER_KEYSTORE_PASSWORD)
+    .keyManagerPassword(SERVER_KEYSTORE_PASSWORD)
+    .keystoreType("PKCS12"));
+
+  @BeforeClass
+  public static void startHttpsReverseProxy() {
+    httpsReverseProxy.start();
+    httpsReverseProxy.stubFor(any(anyUrl()).willReturn(aResponse().proxiedFrom(orchestrator.getServer().getUrl())));
+  }
+
+  @AfterClass
+  public static void stopHttpsReverseProxy() {
+    httpsReverseProxy.stop();
+  }
+
+  @After
+  public void stopProxy() throws Exception {
+    if (proxyServer != null) {
+      proxyServer.stop();
+    }
+  }
+
+  @Test
+  public void bootstrap_and_upload_should_stay_within_budget_with_high_latency() throws Exception {
+    proxyServer = ProxyServer.start(NetworkConditions.none().withLatency(Duration.ofMillis(150)));
+
+    Path summary = temp.getRoot().toPath().resolve("summary.json");
+    BuildResult result = orchestrator.executeBuildQuietly(newScan("degraded-latency", summary, false));
+
+    assertThat(result.getLastStatus()).isZero();
+    assertWithinBudgets(result, summary);
+    assertThat(proxyServer.getRequestsSeenByProxy()).isNotEmpty();
+  }
+
+  @Test
+  public void bootstrap_and_upload_should_stay_within_budget_with_limited_bandwidth() throws Exception {
+    proxyServer = ProxyServer.start(NetworkConditions.none().withBandwidth(2 * 1024 * 1024));
+
+    Path summary = temp.getRoot().toPath().resolve("summary.json");
+    BuildResult result = orchestrator.executeBuildQuietly(newScan("degraded-bandwidth", summary, false));
+
+    assertThat(result.getLastStatus()).isZero();
+    assertWithinBudgets(result, summary);
+  }
+
+  @Test
+  public void bootstrap_should_stay_within_budget_with_slow_tls_handshakes() throws Exception {
+    proxyServer = ProxyServer.start(NetworkConditions.none().withTlsHandshakeDelay(Duration.ofSeconds(2)));
+
+    Path summary = temp.getRoot().toPath().resolve("summary.json");
+    BuildResult result = orchestrator.executeBuildQuietly(newScan("degraded-tls", summary, true));
+
+    assertThat(result.getLastStatus()).isZero();
+    assertWithinBudgets(result, summary);
+    assertThat(proxyServer.getConnectRequestsSeenByProxy()).isNotEmpty();
+  }
+
+  /**
+   * With every connection reset, whether or not requests are retried, the scanner must fail within a bounded time with
+   * a clear message rather than wait for a timeout.
+   */
+  @Test
+  public void analysis_should_fail_fast_when_every_connection_is_reset() throws Exception {
+    proxyServer = ProxyServer.start(NetworkConditions.none().withConnectionResets(1));
+
+    Path summary = temp.getRoot().toPath().resolve("summary.json");
+    long start = System.nanoTime();
+    BuildResult result = orchestrator.executeBuildQuietly(newScan("degraded-reset", summary, false));
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    assertThat(result.getLastStatus()).isNotZero();
+    assertThat(result.getLogs()).contains("Failed to query server version");
+    assertThat(elapsed).isLessThan(FAILURE_BUDGET);
+  }
+
+  @Test
+  public void analysis_should_succeed_when_some_connections_are_reset() throws Exception {
+    proxyServer = ProxyServer.start(NetworkConditions.none().withConnectionResets(5));
+
+    Path summary = temp.getRoot().toPath().resolve("summary.json");
+    BuildResult result = orchestrator.executeBuildQuietly(newScan("degraded-some-resets", summary, false));
+
+    assertThat(result.getLastStatus()).as(result.getLogs()).isZero();
+    assertThat(proxyServer.getNetworkConditions().getConnectionResets()).isPositive();
+    assertWithinBudgets(result, summary);
+  }
+
+  private SonarScanner newScan(String projectKey, Path summary, boolean useHttps) {
+    SonarScanner scan = newScannerWithAdminCredentials(new File("projects/simple-js"))
+      .setProjectKey(projectKey)
+      // so that localhost is routed through the proxy
+      .setEnvironmentVariable("SONAR_SCANNER_OPTS", "-Dhttp.nonProxyHosts=")
+      .setProperty("sonar.scanner.proxyHost", "localhost")
+      .setProperty("sonar.scanner.proxyPort", "" + proxyServer.getPort())
+      .setProperty("sonar.scanner.summaryFile", summary.toString());
+    if (useHttps) {
+      scan.setProperty("sonar.host.url", "https://localhost:" + httpsReverseProxy.httpsPort())
+        .setProperty("sonar.scanner.truststorePath", getResourcePath(KEYSTORE_CLIENT_WITH_CA).toString())
+        .setProperty("sonar.scanner.truststorePassword", KEYSTORE_CLIENT_WITH_CA_PASSWORD);
+    }
+    return scan;
+  }
+
+  private void assertWithinBudgets(BuildResult result, Path summary) throws IOException {
+    String conditions = proxyServer.getNetworkConditions().toString();
+    Duration bootstrap = Duration.ofMillis(extractMillis(BOOTSTRAP_TIME, Files.readString(summary, StandardCharsets.UTF_8)));
+    assertThat(bootstrap).as("bootstrap with " + conditions).isLessThan(BOOTSTRAP_BUDGET);
+    Duration upload = Duration.ofMillis(extractMillis(UPLOAD_TIME, result.getLogs()));
+    assertThat(upload).as("upload with " + conditions).isLessThan(UPLOAD_BUDGET);
+  }
+
+  private static long extractMillis(Pattern pattern, String text) {
+    Matcher matcher = pattern.matcher(text);
+    assertThat(matcher.find()).as(pattern.pattern()).isTrue();
+    return Long.parseLong(matcher.group(1));
+  }
+
+  private static Path getResourcePath(String resourceName) {
+    try {
+      return Paths.get(DegradedNetworkTest.class.getResource(resourceName).toURI()).toAbsolutePath();
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
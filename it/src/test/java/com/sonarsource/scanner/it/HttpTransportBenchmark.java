@@ -0,0 +1,232 @@
+/*
+ * SonarSource :: IT :: SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.sonarsource.scanner.it;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the latency of small API calls and the throughput of downloads with the HTTP client used by the scanner
+ * for the bootstrap, for several values of the {@code sonar.scanner.http.*} transport settings, against a local
+ * stand-in server, directly and through {@link ProxyServer}. The number of connections accepted by the server shows
+ * whether they are reused.
+ * <p>
+ * The HTTP client of the JDK reads its settings once per JVM, so each configuration runs in a separate JVM. Not part
+ * of {@link SonarScannerTestSuite}, run it with {@code mvn test -Dtest=HttpTransportBenchmark}.
+ */
+public class HttpTransportBenchmark {
+
+  private static final int LATENCY_REQUESTS = 500;
+  private static final int DOWNLOADS = 200;
+  private static final int CONCURRENCY = 8;
+  private static final int PAYLOAD_SIZE = 1024 * 1024;
+
+  // same mapping as the scanner applies to the JVM before the bootstrap
+  private static final Map<String, String> JDK_PROPERTIES = Map.of(
+    "sonar.scanner.http.connectionPoolSize", "jdk.httpclient.connectionPoolSize",
+    "sonar.scanner.http.keepAliveTimeout", "jdk.httpclient.keepalive.timeout",
+    "sonar.scanner.http.receiveBufferSize", "jdk.httpclient.receiveBufferSize",
+    "sonar.scanner.http.sendBufferSize", "jdk.httpclient.sendBufferSize");
+
+  private static final Map<String, Map<String, String>> CONFIGURATIONS = new LinkedHashMap<>();
+
+  static {
+    CONFIGURATIONS.put("defaults", Map.of());
+    CONFIGURATIONS.put("http/1.1", Map.of("sonar.scanner.http.http2", "false"));
+    CONFIGURATIONS.put("pool of 1", Map.of("sonar.scanner.http.connectionPoolSize", "1"));
+    CONFIGURATIONS.put("keep-alive 1s", Map.of("sonar.scanner.http.keepAliveTimeout", "1"));
+    CONFIGURATIONS.put("256KB buffers", Map.of(
+      "sonar.scanner.http.receiveBufferSize", "262144",
+      "sonar.scanner.http.sendBufferSize", "262144"));
+  }
+
+  private static final AtomicInteger connections = new AtomicInteger();
+  private static Server server;
+  private static ProxyServer proxy;
+
+  @BeforeClass
+  public static void startServers() throws Exception {
+    server = new Server(new InetSocketAddress("127.0.0.1", 0));
+    ServerConnector connector = (ServerConnector) server.getConnectors()[0];
+    connector.addBean(new Connection.Listener() {
+      @Override
+      public void onOpened(Connection connection) {
+        connections.incrementAndGet();
+      }
+
+      @Override
+      public void onClosed(Connection connection) {
+        // only openings are counted
+      }
+    });
+    server.setHandler(new StandInHandler());
+    server.start();
+    proxy = ProxyServer.start();
+  }
+
+  @AfterClass
+  public static void stopServers() throws Exception {
+    if (proxy != null) {
+      proxy.stop();
+    }
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void benchmark_transport_settings() throws Exception {
+    List<String> report = new ArrayList<>();
+    report.add(String.format("%-16s %-8s %12s %12s %12s %12s", "configuration", "route", "p50 (us)", "p99 (us)", "MB/s", "connections"));
+    for (Map.Entry<String, Map<String, String>> configuration : CONFIGURATIONS.entrySet()) {
+      for (boolean viaProxy : new boolean[] {false, true}) {
+        connections.set(0);
+        String result = runClient(configuration.getValue(), viaProxy);
+        String[] values = result.split(" ");
+        report.add(String.format("%-16s %-8s %12s %12s %12s %12d", configuration.getKey(), viaProxy ? "proxy" : "direct",
+          values[0], values[1], values[2], connections.get()));
+        assertThat(connections.get()).isPositive();
+      }
+    }
+    assertThat(proxy.getRequestsSeenByProxy()).isNotEmpty();
+    report.forEach(System.out::println);
+  }
+
+  private static String runClient(Map<String, String> settings, boolean viaProxy) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    settings.forEach((key, value) -> {
+      if (JDK_PROPERTIES.containsKey(key)) {
+        command.add("-D" + JDK_PROPERTIES.get(key) + "=" + value);
+      }
+    });
+    command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), Client.class.getName(),
+      "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort(),
+      String.valueOf(viaProxy ? proxy.getPort() : 0),
+      "false".equals(settings.get("sonar.scanner.http.http2")) ? "HTTP_1_1" : "HTTP_2"));
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    String lastLine = null;
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lastLine = line;
+      }
+    }
+    assertThat(process.waitFor(5, TimeUnit.MINUTES)).isTrue();
+    assertThat(process.exitValue()).as(lastLine).isZero();
+    return lastLine;
+  }
+
+  /**
+   * Serves the small API responses of the bootstrap and a large payload, like the download of the scanner engine.
+   */
+  private static class StandInHandler extends AbstractHandler {
+    private static final byte[] PAYLOAD = new byte[PAYLOAD_SIZE];
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+      byte[] body = "/payload".equals(target) ? PAYLOAD : "10.8.0.100206".getBytes(StandardCharsets.UTF_8);
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.setContentLength(body.length);
+      try (OutputStream out = response.getOutputStream()) {
+        out.write(body);
+      }
+      baseRequest.setHandled(true);
+    }
+  }
+
+  /**
+   * Runs in its own JVM, prints the median and 99th percentile latencies in microseconds and the download throughput
+   * in MB/s on the last line.
+   */
+  public static class Client {
+    public static void main(String[] args) throws Exception {
+      String baseUrl = args[0];
+      int proxyPort = Integer.parseInt(args[1]);
+      HttpClient.Builder builder = HttpClient.newBuilder()
+        .version(HttpClient.Version.valueOf(args[2]))
+        .connectTimeout(Duration.ofSeconds(10));
+      if (proxyPort > 0) {
+        // the proxy listens on the address of the local host, not on the loopback interface
+        builder.proxy(ProxySelector.of(new InetSocketAddress(InetAddress.getLocalHost(), proxyPort)));
+      }
+      HttpClient client = builder.build();
+
+      HttpRequest version = HttpRequest.newBuilder(URI.create(baseUrl + "/api/server/version")).build();
+      long[] latencies = new long[LATENCY_REQUESTS];
+      for (int i = 0; i < LATENCY_REQUESTS; i++) {
+        long start = System.nanoTime();
+        client.send(version, HttpResponse.BodyHandlers.ofByteArray());
+        latencies[i] = System.nanoTime() - start;
+      }
+      Arrays.sort(latencies);
+
+      HttpRequest payload = HttpRequest.newBuilder(URI.create(baseUrl + "/payload")).build();
+      long start = System.nanoTime();
+      for (int i = 0; i < DOWNLOADS; i += CONCURRENCY) {
+        List<CompletableFuture<HttpResponse<byte[]>>> batch = new ArrayList<>();
+        for (int j = i; j < Math.min(DOWNLOADS, i + CONCURRENCY); j++) {
+          batch.add(client.sendAsync(payload, HttpResponse.BodyHandlers.ofByteArray()));
+        }
+        for (CompletableFuture<HttpResponse<byte[]>> response : batch) {
+          if (response.join().body().length != PAYLOAD_SIZE) {
+            throw new IllegalStateException("Truncated payload");
+          }
+        }
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      System.out.printf("%d %d %.1f%n", latencies[LATENCY_REQUESTS / 2] / 1000, latencies[LATENCY_REQUESTS * 99 / 100] / 1000,
+        DOWNLOADS * (double) PAYLOAD_SIZE / (1024 * 1024) / seconds);
+    }
+  }
+}
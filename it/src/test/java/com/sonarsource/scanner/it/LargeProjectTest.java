@@ -0,0 +1,105 @@
+/*
+ * SonarSource :: IT :: SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.sonarsource.scanner.it;
+
+import com.sonar.orchestrator.build.BuildResult;
+import com.sonar.orchestrator.build.SonarScanner;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the configuration of projects generated by {@link SyntheticProject} is loaded within time budgets. Above
+ * 10 modules, the scanner is run with {@code sonar.scanner.skip=true}, which loads the configuration and writes the run
+ * summary without running an analysis. The cases with 1k modules only run with {@code -DlargeProjects=true}, the 10k
+ * modules are measured by {@link ConfigLoadingBenchmark}.
+ */
+public class LargeProjectTest extends ScannerTestCase {
+
+  static final Pattern CONFIGURATION_TIME = Pattern.compile("\"name\": \"configuration\",\\s*\"timeMs\": (\\d+)");
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void analysis_of_10_modules() throws Exception {
+    Path baseDir = SyntheticProject.withModules(10).generate(temp.newFolder().toPath());
+    Path summary = temp.getRoot().toPath().resolve("summary.json");
+
+    BuildResult result = orchestrator.executeBuild(newScannerWithAdminCredentials(baseDir.toFile())
+      .setProperty("sonar.scanner.summaryFile", summary.toString()));
+
+    assertThat(result.getLastStatus()).isZero();
+    assertThat(configurationTime(summary)).isLessThan(Duration.ofSeconds(10));
+  }
+
+  @Test
+  public void configuration_of_100_discovered_modules_with_symlinks() throws Exception {
+    SyntheticProject project = SyntheticProject.withModules(100).declaredModules(false).symlinks(true);
+    BuildResult result = assertConfigurationTime(project, Duration.ofSeconds(10), "sonar.scanner.discoverModules", "true");
+    assertThat(result.getLogs()).contains("Modules discovered: " + project.moduleCount());
+  }
+
+  @Test
+  public void configuration_of_1k_modules() throws Exception {
+    assumeTrue(Boolean.getBoolean("largeProjects"));
+    SyntheticProject project = SyntheticProject.withModules(1_000);
+    assertConfigurationTime(project, Duration.ofSeconds(20));
+  }
+
+  @Test
+  public void configuration_of_1k_discovered_modules_with_symlinks() throws Exception {
+    assumeTrue(Boolean.getBoolean("largeProjects"));
+    SyntheticProject project = SyntheticProject.withModules(1_000).declaredModules(false).symlinks(true);
+    BuildResult result = assertConfigurationTime(project, Duration.ofSeconds(20), "sonar.scanner.discoverModules", "true");
+    assertThat(result.getLogs()).contains("Modules discovered: " + project.moduleCount());
+  }
+
+  private BuildResult assertConfigurationTime(SyntheticProject project, Duration budget, String... keyValueProperties) throws IOException {
+    Path baseDir = project.generate(temp.newFolder().toPath());
+    Path summary = temp.getRoot().toPath().resolve("summary.json");
+    SonarScanner scanner = newScannerWithAdminCredentials(baseDir.toFile(), keyValueProperties)
+      .setProperty("sonar.scanner.summaryFile", summary.toString())
+      .setProperty("sonar.scanner.skip", "true");
+
+    BuildResult result = orchestrator.executeBuild(scanner);
+
+    assertThat(result.getLastStatus()).isZero();
+    assertThat(result.getLogs()).contains("SonarScanner CLI analysis skipped");
+    assertThat(configurationTime(summary)).as(project.moduleCount() + " modules").isLessThan(budget);
+    return result;
+  }
+
+  static Duration configurationTime(Path summary) throws IOException {
+    Matcher matcher = CONFIGURATION_TIME.matcher(Files.readString(summary, StandardCharsets.UTF_8));
+    assertThat(matcher.find()).as("configuration time in " + summary).isTrue();
+    return Duration.ofMillis(Long.parseLong(matcher.group(1)));
+  }
+}
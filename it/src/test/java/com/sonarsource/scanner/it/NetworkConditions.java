@@ -0,0 +1,137 @@
+/*
+ * SonarSource :: IT :: SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.sonarsource.scanner.it;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Degradations applied by {@link ProxyServer} to the traffic it forwards, to reproduce slow or unreliable links
+ * between the scanner and the server:
+ * <ul>
+ *   <li>latency: added once per proxied request, and in CONNECT tunnels every time the direction of the traffic changes,
+ *   which approximates one round trip</li>
+ *   <li>bandwidth: the transfer rate of request and response bodies, and of tunnelled bytes, in both directions</li>
+ *   <li>connection resets: every n-th request or CONNECT is answered by closing the connection</li>
+ *   <li>TLS handshake delay: the first bytes of every CONNECT tunnel, i.e. the TLS client hello, are held back</li>
+ * </ul>
+ * Instances are immutable, except for the counters of requests and resets.
+ * <p>
+ * The blocking methods are meant for the threads serving proxied requests. The CONNECT tunnels of {@link ProxyServer}
+ * schedule their writes after the delays instead, so that the I/O threads of Jetty are never blocked.
+ */
+class NetworkConditions {
+
+  private static final NetworkConditions NONE = new NetworkConditions(Duration.ZERO, 0, 0, Duration.ZERO);
+
+  private final Duration latency;
+  private final long bytesPerSecond;
+  private final int resetEvery;
+  private final Duration tlsHandshakeDelay;
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger resets = new AtomicInteger();
+
+  private NetworkConditions(Duration latency, long bytesPerSecond, int resetEvery, Duration tlsHandshakeDelay) {
+    this.latency = latency;
+    this.bytesPerSecond = bytesPerSecond;
+    this.resetEvery = resetEvery;
+    this.tlsHandshakeDelay = tlsHandshakeDelay;
+  }
+
+  /** A perfect network. */
+  static NetworkConditions none() {
+    return NONE;
+  }
+
+  NetworkConditions withLatency(Duration latency) {
+    return new NetworkConditions(latency, bytesPerSecond, resetEvery, tlsHandshakeDelay);
+  }
+
+  /** Caps the transfer rate, 0 meaning unlimited. */
+  NetworkConditions withBandwidth(long bytesPerSecond) {
+    return new NetworkConditions(latency, bytesPerSecond, resetEvery, tlsHandshakeDelay);
+  }
+
+  /** Resets the connection of the n-th, 2n-th... request: 1 resets all of them, 0 none. */
+  NetworkConditions withConnectionResets(int everyNth) {
+    return new NetworkConditions(latency, bytesPerSecond, everyNth, tlsHandshakeDelay);
+  }
+
+  NetworkConditions withTlsHandshakeDelay(Duration delay) {
+    return new NetworkConditions(latency, bytesPerSecond, resetEvery, delay);
+  }
+
+  int getConnectionResets() {
+    return resets.get();
+  }
+
+  /**
+   * Counts a new request or tunnel and tells whether its connection must be reset instead of being served.
+   */
+  boolean shouldReset() {
+    if (resetEvery > 0 && requests.incrementAndGet() % resetEvery == 0) {
+      resets.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  long latencyMillis() {
+    return latency.toMillis();
+  }
+
+  long tlsHandshakeDelayMillis() {
+    return tlsHandshakeDelay.toMillis();
+  }
+
+  /**
+   * Time needed to transfer the given number of bytes at the configured bandwidth.
+   */
+  long transferMillis(long bytes) {
+    return bytesPerSecond > 0 && bytes > 0 ? (bytes * 1000 / bytesPerSecond) : 0;
+  }
+
+  /** Blocks the calling thread for the latency. */
+  void applyLatency() {
+    sleep(latencyMillis());
+  }
+
+  /** Blocks the calling thread for the time needed to transfer the given number of bytes. */
+  void throttle(long bytes) {
+    sleep(transferMillis(bytes));
+  }
+
+  private static void sleep(long millis) {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "latency=" + latency.toMillis() + "ms, bandwidth=" + (bytesPerSecond > 0 ? (bytesPerSecond + "B/s") : "unlimited")
+      + ", resetEvery=" + resetEvery + ", tlsHandshakeDelay=" + tlsHandshakeDelay.toMillis() + "ms";
+  }
+}
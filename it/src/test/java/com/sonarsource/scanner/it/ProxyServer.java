@@ -22,17 +22,22 @@ package com.sonarsource.scanner.it;
 import com.sonar.orchestrator.util.NetworkUtils;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.proxy.ConnectHandler;
 import org.eclipse.jetty.proxy.ProxyServlet;
 import org.eclipse.jetty.security.ConstraintMapping;
@@ -56,6 +61,7 @@ import org.eclipse.jetty.server.handler.DefaultHandler;
 import org.eclipse.jetty.server.handler.HandlerCollection;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.security.Constraint;
 import org.eclipse.jetty.util.security.Credential;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
@@ -67,6 +73,7 @@ class ProxyServer {
   // proxy runs at a time and stop() clears them.
   private static final ConcurrentLinkedDeque<String> requestsSeenByProxy = new ConcurrentLinkedDeque<>();
   private static final ConcurrentLinkedDeque<String> connectRequestsSeenByProxy = new ConcurrentLinkedDeque<>();
+  private static volatile NetworkConditions networkConditions = NetworkConditions.none();
 
   private final Server server;
   private final int port;
@@ -81,6 +88,12 @@ class ProxyServer {
     return start(false, null, null);
   }
 
+  /** Starts an unauthenticated proxy that degrades the traffic it forwards. */
+  static ProxyServer start(NetworkConditions conditions) throws Exception {
+    networkConditions = conditions;
+    return start(false, null, null);
+  }
+
   /** Starts a proxy requiring Basic auth (Proxy-Authorization) on all requests and CONNECT tunnels. */
   static ProxyServer start(String user, String password) throws Exception {
     return start(true, user, password);
@@ -126,10 +139,20 @@ class ProxyServer {
     return connectRequestsSeenByProxy;
   }
 
+  NetworkConditions getNetworkConditions() {
+    return networkConditions;
+  }
+
+  /** Changes the degradations applied to the next requests and tunnels. */
+  void setNetworkConditions(NetworkConditions conditions) {
+    networkConditions = conditions;
+  }
+
   void stop() throws Exception {
     server.stop();
     requestsSeenByProxy.clear();
     connectRequestsSeenByProxy.clear();
+    networkConditions = NetworkConditions.none();
   }
 
   private static ServletContextHandler proxyHandler(boolean withProxyAuth, String user, String password) {
@@ -177,6 +200,7 @@ class ProxyServer {
    * <ul>
    *   <li>Optionally requires {@code Proxy-Authorization} on CONNECT requests</li>
    *   <li>Records the host:port of every successfully-authenticated CONNECT</li>
+   *   <li>Applies the {@link NetworkConditions} to the tunnels</li>
    * </ul>
    * <p>
    * When authentication is required and credentials are missing, the handler sends a well-formed
@@ -185,6 +209,9 @@ class ProxyServer {
    */
   private static class TrackingConnectHandler extends ConnectHandler {
 
+    private static final String TUNNEL_STARTED = "tunnelStarted";
+    private static final String LAST_WRITTEN_ENDPOINT = "lastWrittenEndPoint";
+
     private final boolean requireAuth;
     private final String user;
     private final String password;
@@ -205,10 +232,41 @@ class ProxyServer {
         baseRequest.setHandled(true);
         return;
       }
+      if (networkConditions.shouldReset()) {
+        baseRequest.getHttpChannel().getEndPoint().close();
+        baseRequest.setHandled(true);
+        return;
+      }
       connectRequestsSeenByProxy.add(serverAddress);
+      // blocks a thread of the pool serving the CONNECT request, not the tunnels already open
+      networkConditions.applyLatency();
       super.handleConnect(baseRequest, request, response, serverAddress);
     }
 
+    /**
+     * Called for the bytes going through the tunnel in both directions. The context is shared by both directions of a
+     * tunnel: the first write carries the TLS client hello.
+     * <p>
+     * The write is scheduled after the delays instead of sleeping, as this runs on the I/O threads of Jetty. A direction
+     * of the tunnel only reads its next bytes once the callback completes, so the bytes stay in order.
+     */
+    @Override
+    protected void write(EndPoint endPoint, ByteBuffer buffer, Callback callback, ConcurrentMap<String, Object> context) {
+      NetworkConditions conditions = networkConditions;
+      long delayMillis = conditions.transferMillis(buffer.remaining());
+      if (context.putIfAbsent(TUNNEL_STARTED, Boolean.TRUE) == null) {
+        delayMillis += conditions.tlsHandshakeDelayMillis();
+      }
+      if (context.put(LAST_WRITTEN_ENDPOINT, endPoint) != endPoint) {
+        delayMillis += conditions.latencyMillis();
+      }
+      if (delayMillis > 0) {
+        getScheduler().schedule(() -> super.write(endPoint, buffer, callback, context), delayMillis, TimeUnit.MILLISECONDS);
+      } else {
+        super.write(endPoint, buffer, callback, context);
+      }
+    }
+
     private boolean hasValidCredentials(HttpServletRequest request) {
       String credentials = request.getHeader("Proxy-Authorization");
       if (credentials != null && credentials.startsWith("Basic ")) {
@@ -229,10 +287,31 @@ class ProxyServer {
 
     @Override
     protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+      if (networkConditions.shouldReset()) {
+        org.eclipse.jetty.server.Request.getBaseRequest(request).getHttpChannel().getEndPoint().close();
+        return;
+      }
       requestsSeenByProxy.add(request.getRequestURI());
+      // the delays block a thread of the pool serving this request, which has enough threads for the scanner
+      networkConditions.applyLatency();
+      // the request body is forwarded while it is read, the upload is slowed down as a whole
+      networkConditions.throttle(request.getContentLengthLong());
       super.service(request, response);
     }
 
+    @Override
+    protected void onResponseContent(HttpServletRequest request, HttpServletResponse response, Response proxyResponse,
+      byte[] buffer, int offset, int length, Callback callback) {
+      // called on the I/O threads of the HTTP client, and the next content is only delivered once the callback completes
+      long delayMillis = networkConditions.transferMillis(length);
+      if (delayMillis > 0) {
+        getHttpClient().getScheduler().schedule(() -> super.onResponseContent(request, response, proxyResponse, buffer, offset, length, callback),
+          delayMillis, TimeUnit.MILLISECONDS);
+      } else {
+        super.onResponseContent(request, response, proxyResponse, buffer, offset, length, callback);
+      }
+    }
+
     @Override
     protected void sendProxyRequest(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Request proxyRequest) {
       super.sendProxyRequest(clientRequest, proxyResponse, proxyRequest);
@@ -34,7 +34,9 @@ import org.junit.runners.Suite.SuiteClasses;
   ScannerTest.class,
   MultimoduleTest.class,
   DistributionTest.class,
-  ProxyTest.class})
+  ProxyTest.class,
+  DegradedNetworkTest.class,
+  LargeProjectTest.class})
 public class SonarScannerTestSuite {
 
   // Mapping from SonarQube Server versions to Community Build versions for the xoo plugin.
@@ -0,0 +1,217 @@
+/*
+ * SonarSource :: IT :: SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.sonarsource.scanner.it;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Generates multi-module projects of any size, to test how the configuration loading of the scanner scales. Every
+ * module is a directory with a {@code sonar-project.properties} file, and has {@code fanOut} child modules until
+ * {@code depth} levels are reached:
+ * <ul>
+ *   <li>every configuration file declares its children in {@code sonar.modules}, unless modules are left to be
+ *   discovered with {@code sonar.scanner.discoverModules}</li>
+ *   <li>every module defines {@code properties} properties, whose values refer to a property of the root project</li>
+ *   <li>the root project defines a chain of {@code placeholderChain} properties, each one referring to the next</li>
+ *   <li>every module has {@code files} source files in {@code src}</li>
+ *   <li>optionally, every leaf module has a symbolic link to the root directory, that must not be followed</li>
+ * </ul>
+ * It can also be run from the command line, for example from the {@code it} directory after {@code mvn test-compile}:
+ * <pre>
+ * java -cp target/test-classes com.sonarsource.scanner.it.SyntheticProject /tmp/large --depth 3 --fanOut 10
+ * </pre>
+ */
+class SyntheticProject {
+
+  static final String PROJECT_KEY = "synthetic";
+
+  private int depth = 1;
+  private int fanOut = 10;
+  private int properties = 10;
+  private int placeholderChain = 10;
+  private int files = 1;
+  private boolean symlinks = false;
+  private boolean declaredModules = true;
+
+  /**
+   * A project with about the given number of modules: 10 per level, on as many levels as needed.
+   */
+  static SyntheticProject withModules(int count) {
+    int depth = 1;
+    for (int modules = 10; modules < count; modules *= 10) {
+      depth++;
+    }
+    return new SyntheticProject().depth(depth).fanOut(10);
+  }
+
+  SyntheticProject depth(int depth) {
+    this.depth = depth;
+    return this;
+  }
+
+  SyntheticProject fanOut(int fanOut) {
+    this.fanOut = fanOut;
+    return this;
+  }
+
+  SyntheticProject properties(int properties) {
+    this.properties = properties;
+    return this;
+  }
+
+  SyntheticProject placeholderChain(int length) {
+    this.placeholderChain = length;
+    return this;
+  }
+
+  SyntheticProject files(int files) {
+    this.files = files;
+    return this;
+  }
+
+  SyntheticProject symlinks(boolean symlinks) {
+    this.symlinks = symlinks;
+    return this;
+  }
+
+  /**
+   * Whether modules are declared with {@code sonar.modules}, or must be discovered.
+   */
+  SyntheticProject declaredModules(boolean declaredModules) {
+    this.declaredModules = declaredModules;
+    return this;
+  }
+
+  /**
+   * Number of modules, at any depth, of the generated project.
+   */
+  int moduleCount() {
+    int count = 0;
+    int levelCount = 1;
+    for (int level = 0; level < depth; level++) {
+      levelCount *= fanOut;
+      count += levelCount;
+    }
+    return count;
+  }
+
+  /**
+   * Generates the project in the given directory, which is created if needed.
+   *
+   * @return the base directory of the project
+   */
+  Path generate(Path baseDir) throws IOException {
+    Files.createDirectories(baseDir);
+    List<String> lines = new ArrayList<>();
+    lines.add("sonar.projectKey=" + PROJECT_KEY);
+    lines.add("sonar.projectName=Synthetic project with " + moduleCount() + " modules");
+    lines.add("sonar.sources=src");
+    for (int i = 0; i < placeholderChain; i++) {
+      lines.add("synthetic.chain." + i + "=${synthetic.chain." + (i + 1) + "}");
+    }
+    lines.add("synthetic.chain." + placeholderChain + "=end of the chain");
+    generateModule(baseDir, baseDir, lines, 0);
+    return baseDir;
+  }
+
+  private void generateModule(Path rootDir, Path moduleDir, List<String> lines, int level) throws IOException {
+    generateSources(moduleDir);
+    if (level == depth) {
+      if (symlinks) {
+        Files.createSymbolicLink(moduleDir.resolve("root-link"), rootDir);
+      }
+    } else {
+      List<String> children = new ArrayList<>();
+      for (int i = 0; i < fanOut; i++) {
+        children.add("m" + i);
+      }
+      if (declaredModules) {
+        lines.add("sonar.modules=" + String.join(",", children));
+      }
+      for (String child : children) {
+        Path childDir = Files.createDirectories(moduleDir.resolve(child));
+        generateModule(rootDir, childDir, moduleLines(), level + 1);
+      }
+    }
+    Files.write(moduleDir.resolve("sonar-project.properties"), lines, UTF_8);
+  }
+
+  private List<String> moduleLines() {
+    List<String> lines = new ArrayList<>();
+    lines.add("sonar.sources=src");
+    for (int i = 0; i < properties; i++) {
+      lines.add("synthetic.property." + i + "=value " + i + " ${synthetic.chain.0}");
+    }
+    return lines;
+  }
+
+  private void generateSources(Path moduleDir) throws IOException {
+    Path srcDir = Files.createDirectories(moduleDir.resolve("src"));
+    for (int i = 0; i < files; i++) {
+      Files.writeString(srcDir.resolve("File" + i + ".xoo"), "xoo file " + i + "\n", UTF_8);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0 || args.length % 2 == 0) {
+      System.err.println("usage: SyntheticProject <directory> [--depth <n>] [--fanOut <n>] [--properties <n>] [--placeholderChain <n>]"
+        + " [--files <n>] [--symlinks <true|false>] [--declaredModules <true|false>]");
+      System.exit(1);
+    }
+    SyntheticProject project = new SyntheticProject();
+    for (int i = 1; i < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--depth":
+          project.depth(Integer.parseInt(value));
+          break;
+        case "--fanOut":
+          project.fanOut(Integer.parseInt(value));
+          break;
+        case "--properties":
+          project.properties(Integer.parseInt(value));
+          break;
+        case "--placeholderChain":
+          project.placeholderChain(Integer.parseInt(value));
+          break;
+        case "--files":
+          project.files(Integer.parseInt(value));
+          break;
+        case "--symlinks":
+          project.symlinks(Boolean.parseBoolean(value));
+          break;
+        case "--declaredModules":
+          project.declaredModules(Boolean.parseBoolean(value));
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+    }
+    Path baseDir = project.generate(Paths.get(args[0]).toAbsolutePath());
+    System.out.println("Generated a project with " + project.moduleCount() + " modules in " + baseDir);
+  }
+}
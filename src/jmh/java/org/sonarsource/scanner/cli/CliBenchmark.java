@@ -0,0 +1,125 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares the ways of passing a large number of properties to the scanner: -D arguments, an arguments file and
+ * --properties-from with a .properties or a JSON file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CliBenchmark {
+
+  @Param("100000")
+  int count;
+
+  private String[] defineArgs;
+  private String[] argsFileArgs;
+  private String[] propertiesFileArgs;
+  private String[] jsonFileArgs;
+  private Path dir;
+  private final Exit exit = new Exit() {
+    @Override
+    void exit(int status) {
+      throw new IllegalStateException("Unexpected exit: " + status);
+    }
+  };
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("cli-benchmark");
+    List<String> args = new ArrayList<>(count);
+    var properties = new StringBuilder();
+    var json = new StringBuilder("{");
+    for (int i = 0; i < count; i++) {
+      var key = "module" + i + ".sonar.coverageReportPaths";
+      var value = "module" + i + "/target/site/jacoco/jacoco.xml";
+      args.add("-D" + key + "=" + value);
+      properties.append(key).append('=').append(value).append('\n');
+      json.append(i == 0 ? "" : ",").append('"').append(key).append("\":\"").append(value).append('"');
+    }
+    json.append('}');
+    defineArgs = args.toArray(new String[0]);
+
+    var argsFile = Files.write(dir.resolve("args"), args, UTF_8);
+    var propertiesFile = Files.writeString(dir.resolve("scanner.properties"), properties, UTF_8);
+    var jsonFile = Files.writeString(dir.resolve("scanner.json"), json, UTF_8);
+    argsFileArgs = new String[] {"@" + argsFile};
+    propertiesFileArgs = new String[] {"--properties-from", propertiesFile.toString()};
+    jsonFileArgs = new String[] {"--properties-from", jsonFile.toString()};
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (var files = Files.list(dir)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(dir);
+  }
+
+  @Benchmark
+  public Properties defineArguments() {
+    return new Cli(exit).parse(defineArgs).properties();
+  }
+
+  @Benchmark
+  public Properties argumentsFile() {
+    return new Cli(exit).parse(argsFileArgs).properties();
+  }
+
+  @Benchmark
+  public Properties propertiesFile() {
+    return new Cli(exit).parse(propertiesFileArgs).properties();
+  }
+
+  @Benchmark
+  public Properties jsonFile() {
+    return new Cli(exit).parse(jsonFileArgs).properties();
+  }
+}
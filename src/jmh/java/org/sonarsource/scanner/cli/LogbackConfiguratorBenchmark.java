@@ -0,0 +1,140 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.core.joran.spi.JoranException;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares {@link LogbackConfigurator} with the XML configuration it replaces: time to configure a logger context,
+ * and cost of an event going through the filters and the encoder of the console appenders. The standard streams are
+ * redirected to a null stream during the benchmark. Use {@code -f 10 -bm ss} on the configuration benchmarks to see
+ * the cost in a cold JVM, as in a real launch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LogbackConfiguratorBenchmark {
+
+  private static final String XML = "<configuration scan=\"false\">\n"
+    + "  <appender name=\"STDERR\" class=\"ch.qos.logback.core.ConsoleAppender\">\n"
+    + "    <target>System.err</target>\n"
+    + "    <filter class=\"ch.qos.logback.classic.filter.ThresholdFilter\"><level>ERROR</level></filter>\n"
+    + "    <encoder class=\"ch.qos.logback.classic.encoder.PatternLayoutEncoder\"><pattern>" + LogbackConfigurator.PATTERN + "</pattern></encoder>\n"
+    + "  </appender>\n"
+    + "  <appender name=\"STDOUT\" class=\"ch.qos.logback.core.ConsoleAppender\">\n"
+    + "    <target>System.out</target>\n"
+    + "    <filter class=\"ch.qos.logback.classic.filter.LevelFilter\"><level>TRACE</level><onMatch>ACCEPT</onMatch></filter>\n"
+    + "    <filter class=\"ch.qos.logback.classic.filter.LevelFilter\"><level>DEBUG</level><onMatch>ACCEPT</onMatch></filter>\n"
+    + "    <filter class=\"ch.qos.logback.classic.filter.LevelFilter\"><level>INFO</level><onMatch>ACCEPT</onMatch></filter>\n"
+    + "    <filter class=\"ch.qos.logback.classic.filter.LevelFilter\"><level>WARN</level><onMatch>ACCEPT</onMatch></filter>\n"
+    + "    <filter class=\"ch.qos.logback.classic.filter.LevelFilter\"><level>ERROR</level><onMatch>DENY</onMatch></filter>\n"
+    + "    <encoder class=\"ch.qos.logback.classic.encoder.PatternLayoutEncoder\"><pattern>" + LogbackConfigurator.PATTERN + "</pattern></encoder>\n"
+    + "  </appender>\n"
+    + "  <root level=\"INFO\"><appender-ref ref=\"STDOUT\"/><appender-ref ref=\"STDERR\"/></root>\n"
+    + "</configuration>\n";
+
+  @Param({"programmatic", "xml"})
+  String configuration;
+
+  private PrintStream out;
+  private PrintStream err;
+  private LoggerContext context;
+  private ch.qos.logback.classic.Logger logger;
+
+  @Setup(Level.Trial)
+  public void setUp() throws JoranException {
+    out = System.out;
+    err = System.err;
+    var nullStream = new PrintStream(OutputStream.nullOutputStream());
+    System.setOut(nullStream);
+    System.setErr(nullStream);
+    context = configure();
+    logger = context.getLogger("org.sonarsource.scanner.cli.Main");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.stop();
+    System.setOut(out);
+    System.setErr(err);
+  }
+
+  @Benchmark
+  public LoggerContext configureContext() throws JoranException {
+    var result = configure();
+    result.stop();
+    return result;
+  }
+
+  @Benchmark
+  public void logInfo() {
+    logger.info("Project root configuration file: {}", "sonar-project.properties");
+  }
+
+  @Benchmark
+  public void logError() {
+    logger.error("Error during SonarScanner CLI execution");
+  }
+
+  @Benchmark
+  public void logDebugDisabled() {
+    logger.debug("Scanner engine bootstrapping failed");
+  }
+
+  private LoggerContext configure() throws JoranException {
+    var result = new LoggerContext();
+    if ("xml".equals(configuration)) {
+      var joran = new JoranConfigurator();
+      joran.setContext(result);
+      joran.doConfigure(new ByteArrayInputStream(XML.getBytes(UTF_8)));
+    } else {
+      var configurator = new LogbackConfigurator();
+      configurator.setContext(result);
+      configurator.configure(result);
+    }
+    result.getLogger(Logger.ROOT_LOGGER_NAME);
+    return result;
+  }
+}
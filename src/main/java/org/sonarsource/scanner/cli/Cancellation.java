@@ -0,0 +1,182 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cancels the analysis when the time budget given by {@value #TIMEOUT} (in seconds) is exhausted, or when the JVM is
+ * asked to terminate (SIGTERM, Ctrl-C). The main thread is interrupted and the scanner engine process, if any, is
+ * terminated so that the main thread leaves the analysis and goes through the usual end of execution: the bootstrap
+ * result is closed, statistics and logs are flushed. If the main thread does not finish within a grace period after a
+ * timeout, the end of execution is triggered from the watchdog.
+ * <p>
+ * The JVM shutdown hook that handles termination requests is removed once the execution is finished.
+ */
+class Cancellation implements Phases.Listener {
+  static final String TIMEOUT = "sonar.scanner.timeout";
+  static final Duration GRACE_PERIOD = Duration.ofSeconds(30);
+
+  private static final Logger LOG = LoggerFactory.getLogger(Cancellation.class);
+
+  private final Thread mainThread;
+  private final Runnable onUnresponsive;
+  private final Duration gracePeriod;
+  private final AtomicBoolean cancelled = new AtomicBoolean();
+  private final CountDownLatch finished = new CountDownLatch(1);
+  private final Thread shutdownHook = new Thread(this::onTermination, "sonar-scanner-termination");
+  private final AtomicBoolean shutdownHookRegistered = new AtomicBoolean();
+  private volatile boolean timedOut;
+  private Thread watchdog;
+
+  Cancellation(Thread mainThread, Runnable onUnresponsive, Duration gracePeriod) {
+    this.mainThread = mainThread;
+    this.onUnresponsive = onUnresponsive;
+    this.gracePeriod = gracePeriod;
+  }
+
+  /**
+   * @param startNanos value of {@link System#nanoTime()} when the execution started
+   * @param onUnresponsive ends the execution if the main thread does not react to the cancellation
+   */
+  static Cancellation start(Properties props, long startNanos, Runnable onUnresponsive) {
+    var cancellation = new Cancellation(Thread.currentThread(), onUnresponsive, GRACE_PERIOD);
+    var timeout = props.getProperty(TIMEOUT);
+    if (timeout != null) {
+      cancellation.startDeadline(Duration.ofSeconds(parseTimeout(timeout)).minusNanos(System.nanoTime() - startNanos));
+    }
+    Runtime.getRuntime().addShutdownHook(cancellation.shutdownHook);
+    cancellation.shutdownHookRegistered.set(true);
+    return cancellation;
+  }
+
+  private static long parseTimeout(String value) {
+    try {
+      var seconds = Long.parseLong(value.trim());
+      if (seconds > 0) {
+        return seconds;
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new IllegalArgumentException("Invalid value for property " + TIMEOUT + ": " + value + " (expected a number of seconds)");
+  }
+
+  void startDeadline(Duration remaining) {
+    watchdog = new Thread(() -> {
+      try {
+        if (finished.await(Math.max(0, remaining.toMillis()), TimeUnit.MILLISECONDS)) {
+          return;
+        }
+        timedOut = true;
+        cancel("the timeout of the analysis has been reached (" + TIMEOUT + ")");
+        if (!finished.await(gracePeriod.toMillis(), TimeUnit.MILLISECONDS)) {
+          LOG.error("The analysis did not stop within {}s after being cancelled", gracePeriod.toSeconds());
+          onUnresponsive.run();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "sonar-scanner-timeout");
+    watchdog.setDaemon(true);
+    watchdog.start();
+  }
+
+  boolean isTimedOut() {
+    return timedOut;
+  }
+
+  boolean isCancelled() {
+    return cancelled.get();
+  }
+
+  void cancel(String reason) {
+    if (!cancelled.compareAndSet(false, true)) {
+      return;
+    }
+    LOG.error("Cancelling the analysis: {}", reason);
+    mainThread.interrupt();
+    // the main thread may be blocked reading the output of the scanner engine process
+    ProcessHandle.current().children().forEach(ProcessHandle::destroy);
+  }
+
+  private void onTermination() {
+    if (finished.getCount() == 0) {
+      return;
+    }
+    cancel("termination requested");
+    try {
+      if (!finished.await(gracePeriod.toMillis(), TimeUnit.MILLISECONDS)) {
+        ProcessHandle.current().descendants().forEach(ProcessHandle::destroyForcibly);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void phaseStarted(Phases.Phase phase) {
+    // nothing to do
+  }
+
+  @Override
+  public void phaseFinished(Phases.Phase phase) {
+    // nothing to do
+  }
+
+  @Override
+  public void executionFinished(@Nullable Properties props, int exitStatus) {
+    finished.countDown();
+    if (cancelled.get()) {
+      ProcessHandle.current().descendants().forEach(ProcessHandle::destroyForcibly);
+    }
+    removeShutdownHook();
+  }
+
+  /**
+   * Stops watching the execution without ending it, when replaced by another cancellation.
+   */
+  void stop() {
+    finished.countDown();
+    removeShutdownHook();
+  }
+
+  private void removeShutdownHook() {
+    if (!shutdownHookRegistered.compareAndSet(true, false)) {
+      return;
+    }
+    try {
+      Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    } catch (IllegalStateException e) {
+      // already shutting down
+    }
+  }
+
+  Thread shutdownHook() {
+    return shutdownHook;
+  }
+}
@@ -20,11 +20,23 @@
 package org.sonarsource.scanner.cli;
 
 import ch.qos.logback.classic.Level;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static java.util.Arrays.asList;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 class Cli {
 
@@ -32,13 +44,22 @@ class Cli {
 
   private boolean debugEnabled = false;
   private boolean displayVersionOnly = false;
+  private boolean perfReportOnly = false;
   private boolean embedded = false;
   private String invokedFrom = "";
   private final Properties props = new Properties();
+  // real paths of the arguments files being expanded, to detect files including themselves
+  private final Set<Path> argsFiles = new HashSet<>();
   private final Exit exit;
+  private final InputStream stdin;
 
   public Cli(Exit exit) {
+    this(exit, System.in);
+  }
+
+  Cli(Exit exit, InputStream stdin) {
     this.exit = exit;
+    this.stdin = stdin;
   }
 
   boolean isDebugEnabled() {
@@ -49,6 +70,14 @@ class Cli {
     return displayVersionOnly;
   }
 
+  boolean isPerfReportOnly() {
+    return perfReportOnly;
+  }
+
+  boolean isProfilingEnabled() {
+    return Profiler.isEnabled(props);
+  }
+
   boolean isEmbedded() {
     return embedded;
   }
@@ -64,71 +93,144 @@ class Cli {
   Cli parse(String[] args) {
     reset();
     props.putAll(System.getProperties());
-    if (args.length > 0) {
-      int pos = 0;
-      do {
-        pos = processNextArg(args, pos);
-      } while (pos < args.length);
-    }
+    processArgs(Arrays.asList(args).iterator());
     return this;
   }
 
-  private int processNextArg(String[] args, int pos) {
-    String arg = args[pos];
-    if (asList("-h", "--help").contains(arg)) {
-      printUsage();
-      exit.exit(Exit.SUCCESS);
-
-    } else if (asList("-v", "--version").contains(arg)) {
-      displayVersionOnly = true;
-
-    } else if (asList("-e", "--errors").contains(arg)) {
-      LOG
-        .info("Option -e/--errors is no longer supported and will be ignored");
-
-    } else if (asList("-X", "--debug").contains(arg)) {
-      props.setProperty("sonar.verbose", "true");
-      debugEnabled = true;
-      var rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
-      rootLogger.setLevel(Level.DEBUG);
-    } else if (asList("-D", "--define").contains(arg)) {
-      return processProp(args, pos);
+  private void processArgs(Iterator<String> args) {
+    while (args.hasNext()) {
+      processNextArg(args.next(), args);
+    }
+  }
 
-    } else if ("--embedded".equals(arg)) {
-      LOG.info(
-        "Option --embedded is deprecated and will be removed in a future release.");
-      embedded = true;
+  private void processNextArg(String arg, Iterator<String> args) {
+    switch (arg) {
+      case "-h":
+      case "--help":
+        printUsage();
+        exit.exit(Exit.SUCCESS);
+        break;
+      case "-v":
+      case "--version":
+        displayVersionOnly = true;
+        break;
+      case "-e":
+      case "--errors":
+        LOG
+          .info("Option -e/--errors is no longer supported and will be ignored");
+        break;
+      case "-X":
+      case "--debug":
+        props.setProperty("sonar.verbose", "true");
+        debugEnabled = true;
+        var rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+        rootLogger.setLevel(Level.DEBUG);
+        break;
+      case "--profile":
+        props.setProperty(Profiler.PROFILE, "true");
+        break;
+      case "--perf-report":
+        perfReportOnly = true;
+        break;
+      case "-D":
+      case "--define":
+        processProp(args);
+        break;
+      case "--properties-from":
+        processPropertiesFrom(args);
+        break;
+      case "--embedded":
+        LOG.info(
+          "Option --embedded is deprecated and will be removed in a future release.");
+        embedded = true;
+        break;
+      default:
+        processOtherArg(arg);
+    }
+  }
 
-    } else if (arg.startsWith("--from")) {
+  private void processOtherArg(String arg) {
+    if (arg.startsWith("--from")) {
       embedded = true;
       if (arg.length() > "--from=".length()) {
         invokedFrom = arg.substring("--from=".length());
       }
 
     } else if (arg.startsWith("-D")) {
-      arg = arg.substring(2);
-      appendPropertyTo(arg, props);
+      appendPropertyTo(arg.substring(2), props);
+
+    } else if (arg.length() > 1 && arg.startsWith("@")) {
+      processArgsFile(Paths.get(arg.substring(1)));
 
     } else {
       printErrorAndExit("Unrecognized option: " + arg);
     }
-    return pos + 1;
   }
 
-  private int processProp(String[] args, int pos) {
-    int valuePos = pos + 1;
-    if (valuePos >= args.length) {
+  private void processProp(Iterator<String> args) {
+    if (!args.hasNext()) {
       printErrorAndExit("Missing argument for option -D/--define");
     } else {
-      appendPropertyTo(args[valuePos], props);
+      appendPropertyTo(args.next(), props);
+    }
+  }
+
+  /**
+   * Arguments files contain one argument per line, so that values may contain spaces without quoting. Blank lines
+   * and lines starting with '#' are ignored. Lines are processed while they are read. An arguments file may include
+   * other ones, but not itself, even indirectly.
+   */
+  private void processArgsFile(Path file) {
+    try {
+      var realFile = file.toRealPath();
+      if (!argsFiles.add(realFile)) {
+        printErrorAndExit("The arguments file " + file + " includes itself");
+        return;
+      }
+      try (Stream<String> lines = Files.lines(realFile, UTF_8)) {
+        processArgs(lines
+          .map(String::trim)
+          .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+          .iterator());
+      } finally {
+        argsFiles.remove(realFile);
+      }
+    } catch (IOException | UncheckedIOException e) {
+      printErrorAndExit("Unable to read the arguments file " + file + ": " + e.getMessage());
+    }
+  }
+
+  private void processPropertiesFrom(Iterator<String> args) {
+    if (!args.hasNext()) {
+      printErrorAndExit("Missing argument for option --properties-from");
+      return;
+    }
+    var source = args.next();
+    var isStdin = "-".equals(source);
+    try {
+      int overridden;
+      if (isStdin) {
+        // standard input must not be closed
+        overridden = PropertiesReader.read(new InputStreamReader(stdin, UTF_8), source, props);
+      } else {
+        try (var reader = Files.newBufferedReader(Paths.get(source), UTF_8)) {
+          overridden = PropertiesReader.read(reader, source, props);
+        }
+      }
+      if (overridden > 0) {
+        LOG.warn("{} properties read from {} override previously defined values", overridden, isStdin ? "the standard input" : source);
+      }
+    } catch (IOException | RuntimeException e) {
+      printErrorAndExit("Unable to read properties from " + source + ": " + e.getMessage());
     }
-    return valuePos + 1;
   }
 
   private void reset() {
     props.clear();
+    argsFiles.clear();
     debugEnabled = false;
     displayVersionOnly = false;
+    perfReportOnly = false;
   }
 
   private static void appendPropertyTo(String arg, Properties props) {
@@ -159,8 +261,13 @@ class Cli {
     System.out.println("usage: sonar-scanner [options]");
     System.out.println();
     System.out.println("Options:");
+    System.out.println(" @<file>               Read arguments from a file, one per line");
     System.out.println(" -D,--define <arg>     Define property");
     System.out.println(" -h,--help             Display help information");
+    System.out.println(" --perf-report         Display the performance history of the project");
+    System.out.println(" --properties-from <file>");
+    System.out.println("                       Read properties from a .properties or JSON file, or '-' for the standard input");
+    System.out.println(" --profile             Record a Java Flight Recorder profile of the execution");
     System.out.println(" -v,--version          Display version information");
     System.out.println(" -X,--debug            Produce execution debug output");
   }
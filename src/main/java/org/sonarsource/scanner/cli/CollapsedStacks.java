@@ -0,0 +1,75 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Converts the execution samples of a flight recording into the collapsed stacks format ("frame;frame;frame count")
+ * consumed by flame graph tools.
+ */
+class CollapsedStacks {
+  private static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+
+  private CollapsedStacks() {
+  }
+
+  static void convert(Path recordingFile, Path output) throws IOException {
+    Map<String, Long> counts = new TreeMap<>();
+    try (var recording = new RecordingFile(recordingFile)) {
+      while (recording.hasMoreEvents()) {
+        RecordedEvent event = recording.readEvent();
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (EXECUTION_SAMPLE.equals(event.getEventType().getName()) && stackTrace != null) {
+          counts.merge(collapse(stackTrace), 1L, Long::sum);
+        }
+      }
+    }
+    try (var writer = Files.newBufferedWriter(output, UTF_8)) {
+      for (Map.Entry<String, Long> entry : counts.entrySet()) {
+        writer.append(entry.getKey()).append(' ').append(String.valueOf(entry.getValue())).append('\n');
+      }
+    }
+  }
+
+  static String collapse(RecordedStackTrace stackTrace) {
+    var frames = stackTrace.getFrames();
+    var sb = new StringBuilder();
+    // JFR frames are ordered from the top of the stack, flame graphs expect the root first
+    for (int i = frames.size() - 1; i >= 0; i--) {
+      RecordedFrame frame = frames.get(i);
+      if (sb.length() > 0) {
+        sb.append(';');
+      }
+      sb.append(frame.getMethod().getType().getName()).append('.').append(frame.getMethod().getName());
+    }
+    return sb.toString();
+  }
+}
@@ -22,7 +22,6 @@ package org.sonarsource.scanner.cli;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
@@ -30,17 +29,19 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonarsource.scanner.lib.EnvironmentConfig;
+import org.sonarsource.scanner.lib.ScannerProperties;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 class Conf {
   private static final Logger LOG = LoggerFactory.getLogger(Conf.class);
 
-  private static final String SCANNER_HOME = "scanner.home";
+  static final String SCANNER_HOME = "scanner.home";
   private static final String SCANNER_SETTINGS = "scanner.settings";
   private static final String PROJECT_HOME = "project.home";
   private static final String PROJECT_SETTINGS = "project.settings";
@@ -49,18 +50,37 @@ class Conf {
   private static final String PROPERTY_PROJECT_CONFIG_FILE = "sonar.projectConfigFile";
   private static final String SONAR_PROJECT_PROPERTIES_FILENAME = "sonar-project.properties";
   private static final String BOOTSTRAP_START_TIME = "sonar.scanner.bootstrapStartTime";
+  private static final String DEFAULT_WORK_DIR = ".scannerwork";
 
   private final Cli cli;
   private final Map<String, String> env;
+  private final Phases phases;
   private final long startTimeMs;
+  private FileSystemCache fs;
+  private final Map<Path, Properties> preloadedFiles = new ConcurrentHashMap<>();
 
   Conf(Cli cli, Map<String, String> env) {
+    this(cli, env, new Phases());
+  }
+
+  Conf(Cli cli, Map<String, String> env, Phases phases) {
     this.cli = cli;
     this.env = env;
+    this.phases = phases;
     this.startTimeMs = System.currentTimeMillis();
   }
 
   Properties properties() {
+    try (var phase = phases.start(Phases.CONFIGURATION)) {
+      // the file system may have changed since the previous call, for example when restored from a checkpoint
+      fs = new FileSystemCache();
+      var properties = loadProperties();
+      LOG.debug("File system queries answered from cache while loading the configuration: {}", fs.savedCalls());
+      return properties;
+    }
+  }
+
+  private Properties loadProperties() {
     Properties result = new Properties();
     result.putAll(loadGlobalProperties());
     result.putAll(loadProjectProperties());
@@ -78,8 +98,26 @@ class Conf {
   }
 
   private Properties resolve(Properties props) {
-    PropertyResolver resolver = new PropertyResolver(props, env);
-    return resolver.resolve();
+    try (var phase = phases.start(Phases.PROPERTY_RESOLUTION)) {
+      PropertyResolver resolver = new PropertyResolver(props, env);
+      return resolver.resolve();
+    }
+  }
+
+  /**
+   * Working directory of the scanner, where the analysis report and the diagnostic files are written.
+   */
+  static Path getWorkDir(Properties props) {
+    Path baseDir = Paths.get(props.getProperty(PROPERTY_PROJECT_BASEDIR, ""));
+    return getAbsolutePath(props.getProperty(ScannerProperties.WORK_DIR, DEFAULT_WORK_DIR), baseDir).toAbsolutePath();
+  }
+
+  /**
+   * Number of modules, at any depth, of the project described by the loaded properties.
+   */
+  static int moduleCount(Properties props) {
+    var suffix = "." + PROPERTY_PROJECT_BASEDIR;
+    return (int) props.stringPropertyNames().stream().filter(k -> k.endsWith(suffix)).count();
   }
 
   private static Map<String, String> loadEnvironmentProperties() {
@@ -94,7 +132,7 @@ class Conf {
     knownPropsAtThatPoint.putAll(cli.properties());
 
     Path settingsFile = locatePropertiesFile(knownPropsAtThatPoint);
-    if (settingsFile != null && Files.isRegularFile(settingsFile)) {
+    if (settingsFile != null && fs.isRegularFile(settingsFile)) {
       LOG.info("Scanner configuration file: {}", settingsFile);
       return toProperties(settingsFile);
     }
@@ -112,7 +150,7 @@ class Conf {
 
     Path defaultRootSettingsFile = getRootProjectBaseDir(knownPropsAtThatPoint).resolve(SONAR_PROJECT_PROPERTIES_FILENAME);
     Path rootSettingsFile = locatePropertiesFile(defaultRootSettingsFile, knownPropsAtThatPoint, PROJECT_SETTINGS);
-    if (rootSettingsFile != null && Files.isRegularFile(rootSettingsFile)) {
+    if (rootSettingsFile != null && fs.isRegularFile(rootSettingsFile)) {
       LOG.info("Project root configuration file: {}", rootSettingsFile);
       rootProps.putAll(toProperties(rootSettingsFile));
     } else {
@@ -128,6 +166,10 @@ class Conf {
     rootProps.putAll(knownPropsAtThatPoint);
     rootProps.setProperty(PROPERTY_PROJECT_BASEDIR, getRootProjectBaseDir(rootProps).toString());
 
+    if (ModuleDiscovery.isEnabled(rootProps)) {
+      discoverModules(rootProps, projectProps);
+    }
+
     // projectProps will be overridden by any properties found in child
     // project settings
     loadModulesProperties(rootProps, projectProps, "");
@@ -150,6 +192,48 @@ class Conf {
     return getAbsolutePath(cliProps.getProperty(PROPERTY_PROJECT_BASEDIR), absoluteProjectHome);
   }
 
+  /**
+   * Declares the modules found below the root base directory as if they were listed in {@code sonar.modules}, and
+   * loads their configuration files in parallel.
+   */
+  private void discoverModules(Properties rootProps, Properties projectProps) {
+    if (rootProps.containsKey(PROPERTY_MODULES)) {
+      LOG.warn("Property '{}' is ignored because '{}' is set", ModuleDiscovery.DISCOVER_MODULES, PROPERTY_MODULES);
+      return;
+    }
+    try (var phase = phases.start(Phases.MODULE_DISCOVERY)) {
+      var rootBaseDir = Paths.get(rootProps.getProperty(PROPERTY_PROJECT_BASEDIR));
+      // configuration files are read by the threads of the discovery, and timed as nested in the discovery
+      var modules = ModuleDiscovery.create(rootProps).discover(rootBaseDir, module -> {
+        var file = module.propertiesFile();
+        try (var filePhase = phases.start(Phases.CONFIGURATION_FILE, file.toString(), phase)) {
+          preloadedFiles.put(file, readProperties(file));
+        }
+      });
+      List<ModuleDiscovery.Module> allModules = new ArrayList<>();
+      declareModules(modules, rootProps, "", allModules);
+      if (!modules.isEmpty()) {
+        projectProps.setProperty(PROPERTY_MODULES, rootProps.getProperty(PROPERTY_MODULES));
+      }
+      LOG.info("Modules discovered: {}", allModules.size());
+    }
+  }
+
+  private static void declareModules(List<ModuleDiscovery.Module> modules, Properties rootProps, String prefix,
+    List<ModuleDiscovery.Module> allModules) {
+    if (modules.isEmpty()) {
+      return;
+    }
+    List<String> ids = new ArrayList<>();
+    for (ModuleDiscovery.Module module : modules) {
+      ids.add(module.id());
+      rootProps.setProperty(prefix + module.id() + "." + PROPERTY_PROJECT_BASEDIR, module.baseDir().toString());
+      allModules.add(module);
+      declareModules(module.children(), rootProps, prefix + module.id() + ".", allModules);
+    }
+    rootProps.setProperty(prefix + PROPERTY_MODULES, String.join(",", ids));
+  }
+
   private void loadModulesProperties(Properties parentProps, Properties projectProps, String prefix) {
     Path parentBaseDir = Paths.get(parentProps.getProperty(PROPERTY_PROJECT_BASEDIR));
     if (parentProps.containsKey(PROPERTY_MODULES)) {
@@ -180,7 +264,7 @@ class Conf {
       absoluteBaseDir = getAbsolutePath(moduleProps.getProperty(PROPERTY_PROJECT_BASEDIR), parentAbsBaseDir);
       setModuleBaseDir(absoluteBaseDir, moduleProps, moduleId);
       try {
-        if (!Files.isSameFile(parentAbsBaseDir, absoluteBaseDir)) {
+        if (!fs.isSameFile(parentAbsBaseDir, absoluteBaseDir)) {
           tryToFindAndLoadPropsFile(absoluteBaseDir, moduleProps, moduleId);
         }
       } catch (IOException e) {
@@ -196,8 +280,8 @@ class Conf {
     }
   }
 
-  private static void setModuleBaseDir(Path absoluteBaseDir, Properties childProps, String moduleId) {
-    if (!Files.isDirectory(absoluteBaseDir)) {
+  private void setModuleBaseDir(Path absoluteBaseDir, Properties childProps, String moduleId) {
+    if (!fs.isDirectory(absoluteBaseDir)) {
       throw new IllegalStateException(MessageFormat
         .format("The base directory of the module ''{0}'' does not exist: {1}", moduleId, absoluteBaseDir));
     }
@@ -242,7 +326,17 @@ class Conf {
     return null;
   }
 
-  private static Properties toProperties(Path file) {
+  private Properties toProperties(Path file) {
+    var preloaded = preloadedFiles.remove(file);
+    if (preloaded != null) {
+      return preloaded;
+    }
+    try (var phase = phases.start(Phases.CONFIGURATION_FILE, file.toString())) {
+      return readProperties(file);
+    }
+  }
+
+  private static Properties readProperties(Path file) {
     Properties properties = new Properties();
     try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file.toFile()), UTF_8)) {
       properties.load(reader);
@@ -259,7 +353,7 @@ class Conf {
   protected void loadModulePropsFile(Path parentAbsoluteBaseDir, Properties moduleProps, String moduleId) {
     Path propertyFile = getAbsolutePath(moduleProps.getProperty(PROPERTY_PROJECT_CONFIG_FILE),
       parentAbsoluteBaseDir);
-    if (Files.isRegularFile(propertyFile)) {
+    if (fs.isRegularFile(propertyFile)) {
       moduleProps.putAll(toProperties(propertyFile));
       Path absoluteBaseDir;
       if (moduleProps.containsKey(PROPERTY_PROJECT_BASEDIR)) {
@@ -275,9 +369,9 @@ class Conf {
     }
   }
 
-  private static void tryToFindAndLoadPropsFile(Path absoluteBaseDir, Properties moduleProps, String moduleId) {
+  private void tryToFindAndLoadPropsFile(Path absoluteBaseDir, Properties moduleProps, String moduleId) {
     Path propertyFile = absoluteBaseDir.resolve(SONAR_PROJECT_PROPERTIES_FILENAME);
-    if (!Files.isRegularFile(propertyFile)) {
+    if (!fs.isRegularFile(propertyFile)) {
       return;
     }
 
@@ -0,0 +1,126 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.EnvironmentConfig;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Checkpoints the scanner once the scanner engine is bootstrapped, on Java runtimes supporting CRaC (Coordinated
+ * Restore at Checkpoint), so that container images can ship a scanner that is restored directly at that point. The
+ * CRaC API is called by reflection, as it is not part of the Java SE API.
+ * <p>
+ * The JVM refuses to checkpoint while files or sockets are open, for example with {@code sonar.log.file} or
+ * connections kept alive by the HTTP client: the analysis then simply goes on without checkpoint.
+ * <p>
+ * The bootstrapped engine keeps the HTTP client and the credentials of the checkpoint. When the
+ * {@link #connectionSettings(Properties, Map) connection settings} differ after the restore, for example because the
+ * image was built without token, the engine is bootstrapped again with the new ones.
+ */
+class Crac {
+  static final String CHECKPOINT = "sonar.scanner.cracCheckpoint";
+
+  private static final Logger LOG = LoggerFactory.getLogger(Crac.class);
+  private static final String CORE_CLASS = "jdk.crac.Core";
+  private static final List<String> CONNECTION_PROPERTIES = List.of(
+    ScannerProperties.HOST_URL,
+    ScannerProperties.API_BASE_URL,
+    ScannerProperties.SONAR_REGION,
+    ScannerProperties.SONAR_TOKEN,
+    ScannerProperties.SONAR_LOGIN,
+    ScannerProperties.SONAR_PASSWORD,
+    ScannerProperties.SONAR_SCANNER_PROXY_HOST,
+    ScannerProperties.SONAR_SCANNER_PROXY_PORT,
+    ScannerProperties.SONAR_SCANNER_PROXY_USER,
+    ScannerProperties.SONAR_SCANNER_PROXY_PASSWORD,
+    ScannerProperties.SONAR_SCANNER_KEYSTORE_PATH,
+    ScannerProperties.SONAR_SCANNER_KEYSTORE_PASSWORD,
+    ScannerProperties.SONAR_SCANNER_TRUSTSTORE_PATH,
+    ScannerProperties.SONAR_SCANNER_TRUSTSTORE_PASSWORD,
+    ScannerProperties.SONAR_SCANNER_SKIP_SYSTEM_TRUSTSTORE,
+    ScannerProperties.SONAR_SCANNER_SKIP_JVM_SSL_CONFIG,
+    ScannerProperties.SONAR_SCANNER_HTTP_EXTRA_HEADERS);
+
+  private Crac() {
+    // only static methods
+  }
+
+  static boolean isEnabled(Properties props) {
+    return "true".equalsIgnoreCase(props.getProperty(CHECKPOINT));
+  }
+
+  /**
+   * Settings of the HTTP client of the scanner library, from the properties or, as for the bootstrap, from the
+   * environment variables.
+   */
+  static Map<String, String> connectionSettings(Properties props, Map<String, String> env) {
+    var fromEnv = EnvironmentConfig.load(env);
+    var settings = new HashMap<String, String>();
+    for (String key : CONNECTION_PROPERTIES) {
+      var value = props.getProperty(key, fromEnv.get(key));
+      if (value != null) {
+        settings.put(key, value);
+      }
+    }
+    return settings;
+  }
+
+  static boolean isSupported() {
+    try {
+      Class.forName(CORE_CLASS);
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Takes the checkpoint. The JVM exits once the checkpoint is written, and this method returns when the JVM is
+   * restored from it.
+   *
+   * @return true when restored from the checkpoint, false if no checkpoint could be taken
+   */
+  static boolean checkpointRestore() {
+    if (!isSupported()) {
+      LOG.warn("Property '{}' is ignored: this Java runtime does not support CRaC", CHECKPOINT);
+      return false;
+    }
+    try {
+      LOG.info("Checkpointing the scanner");
+      Class.forName(CORE_CLASS).getMethod("checkpointRestore").invoke(null);
+      LOG.info("Scanner restored from checkpoint");
+      return true;
+    } catch (InvocationTargetException e) {
+      LOG.warn("Unable to checkpoint the scanner, the analysis continues without checkpoint: {}", e.getCause().getMessage());
+      LOG.debug("Checkpoint failure", e.getCause());
+      return false;
+    } catch (ReflectiveOperationException e) {
+      LOG.warn("Unable to checkpoint the scanner, the analysis continues without checkpoint", e);
+      return false;
+    }
+  }
+}
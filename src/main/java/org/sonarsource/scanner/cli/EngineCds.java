@@ -0,0 +1,223 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Speeds up the start of a forked scanner engine with a dynamic AppCDS archive of the classes it loads, stored in the
+ * {@value #CDS_DIR} directory of the Sonar user home. The first run records the archive when the engine exits, later
+ * runs map it instead of loading and verifying the classes again.
+ * <p>
+ * This relies on {@code -XX:+AutoCreateSharedArchive}, only available from Java 19: on older JREs, pointing
+ * {@code -XX:SharedArchiveFile} to a missing archive would disable the default CDS archive of the JRE. The archive is
+ * therefore only used when the JRE of the engine is known before it starts, that is when it is configured with
+ * {@code sonar.scanner.javaExePath} or taken from {@code JAVA_HOME} with {@code sonar.scanner.skipJreProvisioning}, and when its
+ * {@code release} file tells Java 19 or later.
+ * <p>
+ * Archives are keyed by the version and location of the JRE, and by the jars of the Sonar user cache, which include
+ * the engine and the plugins. Cached files are stored in a directory named after their checksum, so a new engine or
+ * plugin gets a new archive without reading the jars.
+ */
+class EngineCds {
+  static final String ENGINE_CDS = "sonar.scanner.engineCds";
+  static final String CDS_DIR = "cds";
+  static final int MIN_JAVA_VERSION = 19;
+
+  private static final Logger LOG = LoggerFactory.getLogger(EngineCds.class);
+  private static final String CACHE_DIR = "cache";
+
+  enum Mode {
+    COLD,
+    WARM,
+    DISABLED
+  }
+
+  private final Path archive;
+  private final Mode mode;
+  private final EngineTimings engineTimings;
+
+  private EngineCds(@Nullable Path archive, EngineTimings engineTimings) {
+    this.archive = archive;
+    if (archive == null) {
+      this.mode = Mode.DISABLED;
+    } else {
+      this.mode = Files.isRegularFile(archive) ? Mode.WARM : Mode.COLD;
+    }
+    this.engineTimings = engineTimings;
+  }
+
+  static boolean isEnabled(Properties props) {
+    return "true".equalsIgnoreCase(props.getProperty(ENGINE_CDS));
+  }
+
+  /**
+   * Adds the JVM options of the archive to {@code sonar.scanner.javaOpts}. Called once the scanner engine is
+   * bootstrapped, so that the engine is in the user cache. The archive is kept in the temporary directory when the path
+   * of the Sonar user home contains whitespace, which cannot be passed in these options.
+   */
+  static EngineCds configure(Properties props, Map<String, String> env, EngineTimings engineTimings) {
+    var javaHome = javaHome(props, env);
+    var javaVersion = javaHome != null ? javaVersion(javaHome) : null;
+    if (javaVersion == null) {
+      LOG.info("Class data sharing of the scanner engine is disabled: the JRE of the scanner engine is only known in advance when set with {}, or with {} "
+        + "and JAVA_HOME", ScannerProperties.JAVA_EXECUTABLE_PATH, ScannerProperties.SKIP_JRE_PROVISIONING);
+      return new EngineCds(null, engineTimings);
+    }
+    if (featureVersion(javaVersion) < MIN_JAVA_VERSION) {
+      LOG.info("Class data sharing of the scanner engine is disabled: it requires Java {} or later, the scanner engine runs with Java {}", MIN_JAVA_VERSION,
+        javaVersion);
+      return new EngineCds(null, engineTimings);
+    }
+    var userHome = PerfHistory.userHome(props, env);
+    var archive = cdsDir(userHome).resolve("engine-" + key(javaHome, javaVersion, cachedJars(userHome.resolve(CACHE_DIR))) + ".jsa");
+    if (!JavaOpts.isSafe(archive)) {
+      LOG.warn("Class data sharing of the scanner engine is disabled: the paths of the Sonar user home and of the temporary directory contain whitespace");
+      return new EngineCds(null, engineTimings);
+    }
+    try {
+      Files.createDirectories(archive.getParent());
+    } catch (IOException e) {
+      LOG.warn("Unable to create the directory of the class data sharing archive: {}", archive.getParent(), e);
+      return new EngineCds(null, engineTimings);
+    }
+    var engineCds = new EngineCds(archive, engineTimings);
+    JavaOpts.append(props, "-XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=" + archive);
+    LOG.debug("Scanner engine class data sharing archive ({}): {}", engineCds.mode().name().toLowerCase(Locale.ENGLISH), archive);
+    return engineCds;
+  }
+
+  private static Path cdsDir(Path userHome) {
+    var dir = userHome.resolve(CDS_DIR);
+    if (JavaOpts.isSafe(dir)) {
+      return dir;
+    }
+    return Paths.get(System.getProperty("java.io.tmpdir")).toAbsolutePath().resolve("sonar-scanner-" + CDS_DIR);
+  }
+
+  /**
+   * The home of the JRE running the scanner engine, when it does not depend on the server.
+   */
+  @CheckForNull
+  static Path javaHome(Properties props, Map<String, String> env) {
+    var javaExecutable = props.getProperty(ScannerProperties.JAVA_EXECUTABLE_PATH);
+    if (javaExecutable != null && !javaExecutable.isBlank()) {
+      // <java home>/bin/java
+      var binDir = Paths.get(javaExecutable.trim()).toAbsolutePath().getParent();
+      return binDir != null ? binDir.getParent() : null;
+    }
+    var javaHome = env.get("JAVA_HOME");
+    if ("true".equalsIgnoreCase(props.getProperty(ScannerProperties.SKIP_JRE_PROVISIONING)) && javaHome != null && !javaHome.isBlank()) {
+      return Paths.get(javaHome.trim()).toAbsolutePath();
+    }
+    return null;
+  }
+
+  /**
+   * @return the {@code JAVA_VERSION} of the {@code release} file of the JRE, or null if it cannot be read
+   */
+  @CheckForNull
+  static String javaVersion(Path javaHome) {
+    var release = new Properties();
+    try (InputStream input = Files.newInputStream(javaHome.resolve("release"))) {
+      release.load(input);
+    } catch (IOException e) {
+      LOG.debug("Unable to read the version of the JRE {}", javaHome, e);
+      return null;
+    }
+    var version = release.getProperty("JAVA_VERSION");
+    return version != null ? version.replace("\"", "").trim() : null;
+  }
+
+  static int featureVersion(String javaVersion) {
+    // 1.8.0_392 for Java 8, 21.0.2 or 21 later on
+    var version = javaVersion.startsWith("1.") ? javaVersion.substring(2) : javaVersion;
+    var end = 0;
+    while (end < version.length() && Character.isDigit(version.charAt(end))) {
+      end++;
+    }
+    return end > 0 ? Integer.parseInt(version.substring(0, end)) : 0;
+  }
+
+  /**
+   * Jars of the user cache, as {@code <checksum>/<file name>}, sorted.
+   */
+  static List<String> cachedJars(Path cacheDir) {
+    List<String> jars = new ArrayList<>();
+    if (!Files.isDirectory(cacheDir)) {
+      return jars;
+    }
+    try (DirectoryStream<Path> checksums = Files.newDirectoryStream(cacheDir, Files::isDirectory)) {
+      for (Path checksum : checksums) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(checksum, "*.jar")) {
+          files.forEach(f -> jars.add(checksum.getFileName() + "/" + f.getFileName()));
+        }
+      }
+    } catch (IOException e) {
+      LOG.debug("Unable to list the jars of the user cache {}", cacheDir, e);
+    }
+    Collections.sort(jars);
+    return jars;
+  }
+
+  static String key(Path javaHome, String javaVersion, List<String> cachedJars) {
+    List<String> parts = new ArrayList<>();
+    parts.add(javaHome.toString());
+    parts.add(javaVersion);
+    parts.addAll(cachedJars);
+    return CacheKey.of(parts.toArray(new String[0]));
+  }
+
+  @CheckForNull
+  Path archive() {
+    return archive;
+  }
+
+  Mode mode() {
+    return mode;
+  }
+
+  JsonObject toJson() {
+    var json = new JsonObject();
+    json.addProperty("mode", mode.name().toLowerCase(Locale.ENGLISH));
+    if (archive != null) {
+      json.addProperty("archive", archive.toString());
+    }
+    json.addProperty("engineStartupMs", engineTimings.engineStartupMs());
+    return json;
+  }
+}
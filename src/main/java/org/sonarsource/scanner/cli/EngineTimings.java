@@ -0,0 +1,237 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the durations logged by the scanner engine, in lines like {@code Sensor JavaScript analysis [javascript] (done) | time=1234ms},
+ * as they go through the root logger. When the execution finishes, the slowest sensors, post-processors and phases
+ * are logged, and the full tables are added to the {@link RunSummary}. The number of indexed files is also kept, as a
+ * measure of the size of the project.
+ * <p>
+ * Every log line goes through this appender, so it is only installed when {@value #ENGINE_TIMINGS} is set, or when
+ * the timings are needed by the performance history, the class data sharing archive or the summary file.
+ */
+class EngineTimings extends UnsynchronizedAppenderBase<ILoggingEvent> implements Phases.Listener {
+  static final String ENGINE_TIMINGS = "sonar.scanner.engineTimings";
+  static final int TOP = 5;
+
+  private static final Logger LOG = LoggerFactory.getLogger(EngineTimings.class);
+  private static final String MARKER = " (done) | time=";
+  private static final Pattern TIMING_PATTERN = Pattern.compile("(.+?) \\(done\\) \\| time=(\\d+)ms");
+  private static final String FILES_INDEXED_MARKER = " files indexed";
+  private static final Pattern FILES_INDEXED_PATTERN = Pattern.compile("(\\d+) files indexed");
+  // logs of a forked scanner engine are all relayed by this logger
+  private static final String ENGINE_LOGGER = "org.sonarsource.scanner.lib.internal.facade.forked.ScannerEngineLauncher";
+
+  enum Category {
+    SENSOR("sensors"),
+    POST_PROCESSOR("post-processors"),
+    PHASE("phases");
+
+    private final String label;
+
+    Category(String label) {
+      this.label = label;
+    }
+
+    static Category of(String name) {
+      if (name.startsWith("Sensor ")) {
+        return SENSOR;
+      }
+      if (name.startsWith("Post-processor ") || name.startsWith("Post-job ") || name.startsWith("PostJob ")) {
+        return POST_PROCESSOR;
+      }
+      return PHASE;
+    }
+  }
+
+  static final class Timing {
+    private final String name;
+    private final LongAdder timeMs = new LongAdder();
+    private final LongAdder count = new LongAdder();
+
+    private Timing(String name) {
+      this.name = name;
+    }
+
+    String name() {
+      return name;
+    }
+
+    long timeMs() {
+      return timeMs.sum();
+    }
+
+    long count() {
+      return count.sum();
+    }
+  }
+
+  // only the nested maps are updated while logging
+  private final Map<Category, Map<String, Timing>> timings = new EnumMap<>(Category.class);
+  private final LongAdder filesIndexed = new LongAdder();
+  private volatile long analysisStartNanos;
+  private volatile long engineStartupNanos = -1;
+
+  EngineTimings() {
+    setName("ENGINE_TIMINGS");
+    for (Category category : Category.values()) {
+      timings.put(category, new ConcurrentHashMap<>());
+    }
+  }
+
+  static boolean isEnabled(Properties props) {
+    var summaryFile = props.getProperty(RunSummary.SUMMARY_FILE);
+    return "true".equalsIgnoreCase(props.getProperty(ENGINE_TIMINGS))
+      || PerfHistory.isEnabled(props)
+      || EngineCds.isEnabled(props)
+      || (summaryFile != null && !summaryFile.isBlank());
+  }
+
+  static EngineTimings install() {
+    var rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    var engineTimings = new EngineTimings();
+    engineTimings.setContext(rootLogger.getLoggerContext());
+    engineTimings.start();
+    rootLogger.addAppender(engineTimings);
+    return engineTimings;
+  }
+
+  void uninstall() {
+    var rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    rootLogger.detachAppender(this);
+    stop();
+  }
+
+  @Override
+  protected void append(ILoggingEvent event) {
+    if (engineStartupNanos < 0 && analysisStartNanos != 0 && ENGINE_LOGGER.equals(event.getLoggerName())) {
+      engineStartupNanos = System.nanoTime() - analysisStartNanos;
+    }
+    var message = event.getFormattedMessage();
+    if (message == null) {
+      return;
+    }
+    // cheap checks first, most lines are not timings
+    if (message.contains(FILES_INDEXED_MARKER)) {
+      var matcher = FILES_INDEXED_PATTERN.matcher(message);
+      if (matcher.find()) {
+        filesIndexed.add(Long.parseLong(matcher.group(1)));
+      }
+    }
+    if (!message.contains(MARKER)) {
+      return;
+    }
+    var matcher = TIMING_PATTERN.matcher(message);
+    if (matcher.matches()) {
+      var name = matcher.group(1).trim();
+      var timing = timings.get(Category.of(name)).computeIfAbsent(name, Timing::new);
+      timing.timeMs.add(Long.parseLong(matcher.group(2)));
+      timing.count.increment();
+    }
+  }
+
+  /**
+   * Number of files indexed by the scanner engine, summed over modules.
+   */
+  long filesIndexed() {
+    return filesIndexed.sum();
+  }
+
+  /**
+   * Time between the start of the analysis and the first log of a forked scanner engine, mostly spent starting its
+   * JVM and loading its classes, or -1 if unknown.
+   */
+  long engineStartupMs() {
+    var nanos = engineStartupNanos;
+    return nanos < 0 ? -1 : (nanos / 1_000_000);
+  }
+
+  /**
+   * Timings of the category, the slowest first.
+   */
+  List<Timing> timings(Category category) {
+    return timings.get(category).values().stream()
+      .sorted(Comparator.comparingLong(Timing::timeMs).reversed().thenComparing(Timing::name))
+      .collect(Collectors.toList());
+  }
+
+  JsonObject toJson() {
+    var json = new JsonObject();
+    for (Category category : Category.values()) {
+      var array = new JsonArray();
+      for (Timing timing : timings(category)) {
+        var entry = new JsonObject();
+        entry.addProperty("name", timing.name());
+        entry.addProperty("timeMs", timing.timeMs());
+        entry.addProperty("count", timing.count());
+        array.add(entry);
+      }
+      json.add(category.label, array);
+    }
+    return json;
+  }
+
+  @Override
+  public void phaseStarted(Phases.Phase phase) {
+    if (Phases.ANALYSIS.equals(phase.name())) {
+      analysisStartNanos = phase.startNanos();
+    }
+  }
+
+  @Override
+  public void phaseFinished(Phases.Phase phase) {
+    // nothing to do
+  }
+
+  @Override
+  public void executionFinished(@Nullable Properties props, int exitStatus) {
+    uninstall();
+    for (Category category : Category.values()) {
+      var slowest = timings(category);
+      if (slowest.isEmpty()) {
+        continue;
+      }
+      LOG.info("Slowest {}:", category.label);
+      slowest.stream().limit(TOP).forEach(t -> LOG.atInfo()
+        .addArgument(() -> Stats.formatTime(t.timeMs()))
+        .addArgument(t.name())
+        .addArgument(() -> t.count() > 1 ? (" (x" + t.count() + ")") : "")
+        .log("  {} {}{}"));
+    }
+  }
+}
@@ -24,6 +24,7 @@ class Exit {
   static final int INTERNAL_ERROR = 1;
   static final int USER_ERROR = 2;
   static final int SCANNER_ENGINE_ERROR = 3;
+  static final int TIMEOUT = 4;
 
   void exit(int status) {
     System.exit(status);
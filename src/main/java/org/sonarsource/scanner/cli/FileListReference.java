@@ -0,0 +1,111 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Values of the form {@code @file:<path>} reference a file listing one value per line, for multi-valued properties
+ * that would otherwise be huge comma-separated strings, like generated lists of sources. References are kept as is
+ * while the configuration is loaded, resolved and checked, and are only expanded when the properties are handed to
+ * the scanner engine. Relative paths are resolved from the base directory of the root project. Blank lines are
+ * ignored.
+ */
+class FileListReference {
+  static final String PREFIX = "@file:";
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileListReference.class);
+  private static final String PROJECT_BASEDIR = "sonar.projectBaseDir";
+
+  private FileListReference() {
+    // only static methods
+  }
+
+  static boolean isReference(@Nullable String value) {
+    return value != null && value.startsWith(PREFIX);
+  }
+
+  static Path path(String value, Path rootBaseDir) {
+    return Conf.getAbsolutePath(value.substring(PREFIX.length()), rootBaseDir);
+  }
+
+  /**
+   * Lazily reads the values listed in a file. The stream must be closed.
+   */
+  static Stream<String> values(Path file) throws IOException {
+    return Files.lines(file, UTF_8)
+      .map(String::trim)
+      .filter(line -> !line.isEmpty());
+  }
+
+  /**
+   * Replaces all the references by the comma-separated values they list.
+   */
+  static void expand(Properties props) {
+    var rootBaseDir = rootBaseDir(props);
+    int expanded = 0;
+    for (String key : props.stringPropertyNames()) {
+      var value = props.getProperty(key);
+      if (isReference(value)) {
+        props.setProperty(key, join(key, path(value, rootBaseDir)));
+        expanded++;
+      }
+    }
+    if (expanded > 0) {
+      LOG.debug("File list references expanded: {}", expanded);
+    }
+  }
+
+  static Path rootBaseDir(Properties props) {
+    var projectBaseDir = props.getProperty(PROJECT_BASEDIR);
+    return Paths.get(projectBaseDir != null ? projectBaseDir : "").toAbsolutePath();
+  }
+
+  private static String join(String key, Path file) {
+    try (var values = values(file)) {
+      var sb = new StringBuilder((int) Math.min(Files.size(file), Integer.MAX_VALUE - 8L));
+      values.forEach(v -> {
+        if (sb.length() > 0) {
+          sb.append(',');
+        }
+        // multi-valued properties are parsed as CSV by the scanner engine
+        if (v.indexOf(',') >= 0 || v.indexOf('"') >= 0) {
+          sb.append('"').append(v.replace("\"", "\"\"")).append('"');
+        } else {
+          sb.append(v);
+        }
+      });
+      return sb.toString();
+    } catch (IOException | UncheckedIOException e) {
+      throw new IllegalStateException("Unable to read the file list of property '" + key + "': " + file, e);
+    }
+  }
+}
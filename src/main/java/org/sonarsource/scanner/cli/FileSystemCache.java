@@ -0,0 +1,143 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoizes the file system queries made while loading the configuration, which may be slow on network file systems.
+ * The file system is expected not to change during the lifetime of an instance, so there is one instance per execution.
+ * <p>
+ * Real paths are resolved one path element at a time, starting from the root and reusing the resolution of the parent
+ * directory, so that a symbolic link shared by many modules is only read once.
+ */
+class FileSystemCache {
+  private static final int MAX_SYMLINK_DEPTH = 40;
+
+  private final Map<Path, Optional<BasicFileAttributes>> attributes = new ConcurrentHashMap<>();
+  private final Map<Path, Optional<BasicFileAttributes>> linkAttributes = new ConcurrentHashMap<>();
+  private final Map<Path, Path> realPaths = new ConcurrentHashMap<>();
+  private final LongAdder savedCalls = new LongAdder();
+
+  boolean isDirectory(Path path) {
+    return attributes(path).map(BasicFileAttributes::isDirectory).orElse(false);
+  }
+
+  boolean isRegularFile(Path path) {
+    return attributes(path).map(BasicFileAttributes::isRegularFile).orElse(false);
+  }
+
+  /**
+   * Same contract as {@link Files#isSameFile(Path, Path)}.
+   */
+  boolean isSameFile(Path path1, Path path2) throws IOException {
+    if (path1.equals(path2)) {
+      return true;
+    }
+    return realPath(path1).equals(realPath(path2));
+  }
+
+  /**
+   * Same contract as {@link Path#toRealPath(LinkOption...)}.
+   */
+  Path realPath(Path path) throws IOException {
+    return realPath(path.toAbsolutePath(), 0);
+  }
+
+  private Path realPath(Path absolutePath, int depth) throws IOException {
+    var cached = realPaths.get(absolutePath);
+    if (cached != null) {
+      savedCalls.increment();
+      return cached;
+    }
+    var parent = absolutePath.getParent();
+    var fileName = absolutePath.getFileName();
+    Path resolved;
+    if (parent == null || fileName == null) {
+      // file system root
+      resolved = absolutePath;
+    } else if ("..".equals(fileName.toString())) {
+      var realParent = realPath(parent, depth);
+      resolved = realParent.getParent() != null ? realParent.getParent() : realParent;
+    } else if (".".equals(fileName.toString())) {
+      resolved = realPath(parent, depth);
+    } else {
+      var candidate = realPath(parent, depth).resolve(fileName);
+      var candidateAttributes = linkAttributes(candidate)
+        .orElseThrow(() -> new NoSuchFileException(absolutePath.toString()));
+      if (candidateAttributes.isSymbolicLink()) {
+        if (depth >= MAX_SYMLINK_DEPTH) {
+          throw new FileSystemException(absolutePath.toString(), null, "Too many levels of symbolic links");
+        }
+        var target = Files.readSymbolicLink(candidate);
+        // not normalized: '..' in the target goes up from the real path of the element before it, which may be a link
+        resolved = realPath(candidate.getParent().resolve(target), depth + 1);
+      } else {
+        resolved = candidate;
+      }
+    }
+    realPaths.put(absolutePath, resolved);
+    return resolved;
+  }
+
+  private Optional<BasicFileAttributes> attributes(Path path) {
+    return cached(attributes, path.toAbsolutePath());
+  }
+
+  private Optional<BasicFileAttributes> linkAttributes(Path path) {
+    return cached(linkAttributes, path, LinkOption.NOFOLLOW_LINKS);
+  }
+
+  private Optional<BasicFileAttributes> cached(Map<Path, Optional<BasicFileAttributes>> cache, Path path, LinkOption... options) {
+    var cached = cache.get(path);
+    if (cached != null) {
+      savedCalls.increment();
+      return cached;
+    }
+    var result = readAttributes(path, options);
+    cache.put(path, result);
+    return result;
+  }
+
+  private static Optional<BasicFileAttributes> readAttributes(Path path, LinkOption... options) {
+    try {
+      return Optional.of(Files.readAttributes(path, BasicFileAttributes.class, options));
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Number of queries answered from the cache, without accessing the file system.
+   */
+  long savedCalls() {
+    return savedCalls.sum();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.net.http.HttpClient;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.Properties;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transport settings of the HTTP connections to the server. The scanner library uses the HTTP client of the JDK,
+ * which is only tunable with {@code jdk.httpclient.*} system properties read when it is first used: the settings
+ * are applied as such properties before the bootstrap, unless already set on the command line, and passed to the
+ * scanner engine JVM.
+ * <p>
+ * The library negotiates the protocol version itself, so the HTTP/2 preference only applies to the requests sent by
+ * the scanner CLI.
+ */
+class HttpTransport {
+  static final String CONNECTION_POOL_SIZE = "sonar.scanner.http.connectionPoolSize";
+  static final String KEEP_ALIVE_TIMEOUT = "sonar.scanner.http.keepAliveTimeout";
+  static final String RECEIVE_BUFFER_SIZE = "sonar.scanner.http.receiveBufferSize";
+  static final String SEND_BUFFER_SIZE = "sonar.scanner.http.sendBufferSize";
+  static final String HTTP2 = "sonar.scanner.http.http2";
+
+  private static final Logger LOG = LoggerFactory.getLogger(HttpTransport.class);
+  private static final Map<String, List<String>> JDK_PROPERTIES = new LinkedHashMap<>();
+  // values set by this class, which may be set again after a restore from a CRaC checkpoint
+  private static final Map<String, String> APPLIED_VALUES = new ConcurrentHashMap<>();
+
+  static {
+    JDK_PROPERTIES.put(CONNECTION_POOL_SIZE, List.of("jdk.httpclient.connectionPoolSize"));
+    // the HTTP/2 timeout is only supported by Java 20+, and defaults to the HTTP/1.1 timeout with Java 21+
+    JDK_PROPERTIES.put(KEEP_ALIVE_TIMEOUT, List.of("jdk.httpclient.keepalive.timeout", "jdk.httpclient.keepalive.timeout.h2"));
+    JDK_PROPERTIES.put(RECEIVE_BUFFER_SIZE, List.of("jdk.httpclient.receiveBufferSize"));
+    JDK_PROPERTIES.put(SEND_BUFFER_SIZE, List.of("jdk.httpclient.sendBufferSize"));
+  }
+
+  private HttpTransport() {
+    // only static methods
+  }
+
+  static boolean isEnabled(Properties props) {
+    return JDK_PROPERTIES.keySet().stream().anyMatch(key -> props.getProperty(key) != null);
+  }
+
+  static void configure(Properties props) {
+    var engineOpts = new StringBuilder();
+    JDK_PROPERTIES.forEach((key, jdkProperties) -> {
+      var value = props.getProperty(key);
+      if (value == null || value.isBlank()) {
+        return;
+      }
+      if (!isNonNegativeNumber(value.trim())) {
+        LOG.warn("Invalid value for '{}', expected a non-negative number: {}", key, value);
+        return;
+      }
+      for (String jdkProperty : jdkProperties) {
+        var current = System.getProperty(jdkProperty);
+        if (current == null || current.equals(APPLIED_VALUES.get(jdkProperty))) {
+          System.setProperty(jdkProperty, value.trim());
+          APPLIED_VALUES.put(jdkProperty, value.trim());
+        } else {
+          LOG.debug("'{}' is ignored because '{}' is already set", key, jdkProperty);
+        }
+        engineOpts.append(engineOpts.length() == 0 ? "" : " ").append("-D").append(jdkProperty).append('=').append(System.getProperty(jdkProperty));
+      }
+    });
+    if (engineOpts.length() > 0) {
+      LOG.debug("HTTP transport: {}", engineOpts);
+      JavaOpts.append(props, engineOpts.toString());
+    }
+  }
+
+  private static boolean isNonNegativeNumber(String value) {
+    try {
+      return Long.parseLong(value) >= 0;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Builder for the HTTP clients of the scanner CLI, preferring HTTP/2 unless {@value #HTTP2} is false.
+   */
+  static HttpClient.Builder newClientBuilder(@Nullable Properties props) {
+    var http2 = props == null || !"false".equalsIgnoreCase(props.getProperty(HTTP2, "").trim());
+    return HttpClient.newBuilder().version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+  }
+}
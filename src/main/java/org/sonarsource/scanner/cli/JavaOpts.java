@@ -0,0 +1,49 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.regex.Pattern;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Options of the forked scanner engine JVM, in {@code sonar.scanner.javaOpts}. The scanner library splits them on
+ * whitespace without any quoting, so an option holding a path with a space would be cut in two.
+ */
+class JavaOpts {
+  private static final Pattern WHITESPACE = Pattern.compile("\\s");
+
+  private JavaOpts() {
+    // only static methods
+  }
+
+  /**
+   * Whether the path can be passed in an option of the engine JVM.
+   */
+  static boolean isSafe(Path path) {
+    return !WHITESPACE.matcher(path.toString()).find();
+  }
+
+  static void append(Properties props, String opts) {
+    var existingOpts = props.getProperty(ScannerProperties.SCANNER_JAVA_OPTS, "").trim();
+    props.setProperty(ScannerProperties.SCANNER_JAVA_OPTS, existingOpts.isEmpty() ? opts : (existingOpts + " " + opts));
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the lifecycle events of the execution to the {@link ScannerLifecycleListener}s. Events are queued and
+ * delivered on a single daemon thread, in order: the analysis never waits for a listener, except for a bounded time
+ * at the end of the execution so that the last events are not lost. Events are dropped when the queue is full.
+ */
+class LifecycleDispatcher implements Phases.Listener {
+  static final String EXTENSIONS_DIR = "extensions";
+  static final int QUEUE_SIZE = 1_000;
+  static final Duration FLUSH_TIMEOUT = Duration.ofSeconds(5);
+
+  private static final Logger LOG = LoggerFactory.getLogger(LifecycleDispatcher.class);
+
+  private final List<ScannerLifecycleListener> listeners;
+  private final ThreadPoolExecutor executor;
+  private final Map<String, Long> phaseNanos = new ConcurrentHashMap<>();
+  private final AtomicInteger dropped = new AtomicInteger();
+  private final long startNanos = System.nanoTime();
+
+  LifecycleDispatcher(List<ScannerLifecycleListener> listeners) {
+    this(listeners, QUEUE_SIZE);
+  }
+
+  LifecycleDispatcher(List<ScannerLifecycleListener> listeners, int queueSize) {
+    this.listeners = List.copyOf(listeners);
+    if (listeners.isEmpty()) {
+      this.executor = null;
+    } else {
+      this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+        var thread = new Thread(r, "sonar-scanner-lifecycle");
+        thread.setDaemon(true);
+        return thread;
+      }, (r, e) -> dropped.incrementAndGet());
+    }
+  }
+
+  /**
+   * Loads the listeners declared on the classpath and in the JARs of the {@value #EXTENSIONS_DIR} directory of the
+   * scanner installation.
+   */
+  static LifecycleDispatcher load(@Nullable String scannerHome) {
+    List<ScannerLifecycleListener> listeners = new ArrayList<>();
+    var classLoader = extensionsClassLoader(scannerHome);
+    var iterator = ServiceLoader.load(ScannerLifecycleListener.class, classLoader).iterator();
+    while (true) {
+      try {
+        if (!iterator.hasNext()) {
+          break;
+        }
+        var listener = iterator.next();
+        LOG.debug("Lifecycle listener: {}", listener.getClass().getName());
+        listeners.add(listener);
+      } catch (ServiceConfigurationError e) {
+        LOG.warn("Unable to load a lifecycle listener", e);
+      }
+    }
+    return new LifecycleDispatcher(listeners);
+  }
+
+  private static ClassLoader extensionsClassLoader(@Nullable String scannerHome) {
+    var parent = LifecycleDispatcher.class.getClassLoader();
+    var jars = extensionJars(scannerHome);
+    return jars.length == 0 ? parent : new URLClassLoader(jars, parent);
+  }
+
+  private static URL[] extensionJars(@Nullable String scannerHome) {
+    if (scannerHome == null || scannerHome.isBlank()) {
+      return new URL[0];
+    }
+    var dir = Paths.get(scannerHome, EXTENSIONS_DIR);
+    if (!Files.isDirectory(dir)) {
+      return new URL[0];
+    }
+    try (Stream<Path> files = Files.list(dir)) {
+      List<URL> urls = new ArrayList<>();
+      for (Path jar : files.filter(f -> f.getFileName().toString().endsWith(".jar")).sorted().collect(Collectors.toList())) {
+        urls.add(jar.toUri().toURL());
+      }
+      return urls.toArray(new URL[0]);
+    } catch (IOException e) {
+      LOG.warn("Unable to list the extensions in {}", dir, e);
+      return new URL[0];
+    }
+  }
+
+  boolean hasListeners() {
+    return !listeners.isEmpty();
+  }
+
+  @Override
+  public void phaseStarted(Phases.Phase phase) {
+    // durations are only known when phases finish
+  }
+
+  @Override
+  public void phaseFinished(Phases.Phase phase) {
+    phaseNanos.merge(phase.name(), phase.durationNanos(), Long::sum);
+  }
+
+  void configurationLoaded(Properties props) {
+    if (hasListeners()) {
+      Map<String, Duration> timings = new LinkedHashMap<>();
+      for (String name : List.of(Phases.CONFIGURATION, Phases.CONFIGURATION_FILE, Phases.MODULE_DISCOVERY, Phases.PROPERTY_RESOLUTION)) {
+        var duration = phaseDuration(name);
+        if (duration != null) {
+          timings.put(name, duration);
+        }
+      }
+      var moduleCount = Conf.moduleCount(props);
+      dispatch(l -> l.configurationLoaded(timings, moduleCount));
+    }
+  }
+
+  void bootstrapFinished(boolean successful) {
+    var duration = phaseDuration(Phases.BOOTSTRAP);
+    dispatch(l -> l.bootstrapFinished(successful, duration != null ? duration : Duration.ZERO));
+  }
+
+  void analysisStarted() {
+    dispatch(ScannerLifecycleListener::analysisStarted);
+  }
+
+  void analysisFailed(Throwable error) {
+    dispatch(l -> l.analysisFailed(error));
+  }
+
+  @Override
+  public void executionFinished(@Nullable Properties props, int exitStatus) {
+    if (!hasListeners()) {
+      return;
+    }
+    var duration = Duration.ofNanos(System.nanoTime() - startNanos);
+    var resourceUsage = ScannerLifecycleListener.ResourceUsage.current();
+    dispatch(l -> l.analysisFinished(exitStatus, duration, resourceUsage));
+    flush();
+  }
+
+  private void flush() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(FLUSH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+        LOG.warn("Lifecycle listeners did not process all the events within {} seconds", FLUSH_TIMEOUT.toSeconds());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (dropped.get() > 0) {
+      LOG.warn("{} lifecycle events were dropped because listeners were too slow", dropped.get());
+    }
+  }
+
+  @CheckForNull
+  private Duration phaseDuration(String name) {
+    var nanos = phaseNanos.get(name);
+    return nanos != null ? Duration.ofNanos(nanos) : null;
+  }
+
+  private void dispatch(Consumer<ScannerLifecycleListener> event) {
+    if (!hasListeners()) {
+      return;
+    }
+    // events rejected because the queue is full, or sent after the flush, are counted as dropped
+    executor.execute(() -> listeners.forEach(l -> notify(l, event)));
+  }
+
+  private static void notify(ScannerLifecycleListener listener, Consumer<ScannerLifecycleListener> event) {
+    try {
+      event.accept(listener);
+    } catch (Exception | LinkageError e) {
+      LOG.warn("Lifecycle listener {} failed", listener.getClass().getName(), e);
+    }
+  }
+}
@@ -0,0 +1,356 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.filter.ThresholdFilter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.rolling.FixedWindowRollingPolicy;
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import ch.qos.logback.core.rolling.SizeBasedTriggeringPolicy;
+import ch.qos.logback.core.util.Duration;
+import ch.qos.logback.core.util.FileSize;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional reconfiguration of the log outputs, for analyses producing a lot of logs:
+ * <ul>
+ * <li>an asynchronous mode, where logging threads only push events to a bounded queue consumed by a single thread
+ * writing to the console, so that slow consoles do not slow down the analysis</li>
+ * <li>a buffered log file, rotated and gzipped when it reaches a maximum size. When enabled, the console only
+ * receives INFO and above, the full logs (including DEBUG with {@code -X}) going to the file.</li>
+ * </ul>
+ */
+class LogAppenders implements Phases.Listener {
+  static final String ASYNC = "sonar.log.async";
+  static final String ASYNC_QUEUE_SIZE = "sonar.log.asyncQueueSize";
+  static final String ASYNC_OVERFLOW = "sonar.log.asyncOverflow";
+  static final String FILE = "sonar.log.file";
+  static final String FILE_MAX_SIZE = "sonar.log.fileMaxSize";
+  static final String FILE_MAX_HISTORY = "sonar.log.fileMaxHistory";
+
+  private static final Logger LOG = LoggerFactory.getLogger(LogAppenders.class);
+  private static final String PATTERN = "%date{HH:mm:ss.SSS} %-5level %msg%n";
+  private static final int DEFAULT_QUEUE_SIZE = 8192;
+  private static final String DEFAULT_FILE_MAX_SIZE = "100MB";
+  private static final int DEFAULT_FILE_MAX_HISTORY = 5;
+  private static final int MAX_FLUSH_TIME_MS = 10_000;
+  static final int SIZE_CHECK_INCREMENT_MS = 500;
+
+  enum Overflow {
+    /**
+     * Logging threads wait for room in the queue, no event is lost.
+     */
+    BLOCK,
+    /**
+     * When the queue is almost full, DEBUG and TRACE events are dropped. Other events still wait for room.
+     */
+    DROP
+  }
+
+  private static final AtomicBoolean SHUTDOWN_HOOK_REGISTERED = new AtomicBoolean();
+  private static LogAppenders current;
+
+  private final ch.qos.logback.classic.Logger rootLogger;
+  private final List<Appender<ILoggingEvent>> installed = new ArrayList<>();
+  private final Map<Appender<ILoggingEvent>, ThresholdFilter> consoleFilters = new LinkedHashMap<>();
+  private final List<Appender<ILoggingEvent>> detachedConsoleAppenders = new ArrayList<>();
+  private DroppingAsyncAppender asyncAppender;
+
+  private LogAppenders() {
+    this.rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+  }
+
+  static boolean isEnabled(Properties props) {
+    return "true".equalsIgnoreCase(props.getProperty(ASYNC)) || props.containsKey(FILE);
+  }
+
+  /**
+   * Replaces the appenders installed by a previous call, which are flushed and closed first.
+   */
+  static synchronized LogAppenders configure(Properties props) {
+    if (current != null) {
+      current.stop();
+      current = null;
+    }
+    var appenders = new LogAppenders();
+    var context = appenders.rootLogger.getLoggerContext();
+    var consoleAppenders = consoleAppenders(appenders.rootLogger);
+    List<Appender<ILoggingEvent>> outputs = new ArrayList<>(consoleAppenders);
+
+    var file = props.getProperty(FILE);
+    if (file != null) {
+      outputs.forEach(a -> {
+        var filter = threshold(context, Level.INFO);
+        addFirstFilter(a, filter);
+        appenders.consoleFilters.put(a, filter);
+      });
+      outputs.add(fileAppender(context, file.trim(), props));
+    }
+
+    if ("true".equalsIgnoreCase(props.getProperty(ASYNC))) {
+      appenders.asyncAppender = new DroppingAsyncAppender(parseOverflow(props.getProperty(ASYNC_OVERFLOW)));
+      appenders.asyncAppender.setContext(context);
+      appenders.asyncAppender.setName("ASYNC");
+      appenders.asyncAppender.setQueueSize(parseInt(props, ASYNC_QUEUE_SIZE, DEFAULT_QUEUE_SIZE));
+      appenders.asyncAppender.setMaxFlushTime(MAX_FLUSH_TIME_MS);
+      // AsyncAppender only accepts a single appender
+      var fanOut = new FanOutAppender(outputs);
+      fanOut.setContext(context);
+      fanOut.start();
+      appenders.asyncAppender.addAppender(fanOut);
+      appenders.asyncAppender.start();
+      consoleAppenders.forEach(a -> {
+        appenders.rootLogger.detachAppender(a);
+        appenders.detachedConsoleAppenders.add(a);
+      });
+      appenders.install(appenders.asyncAppender);
+    } else if (file != null) {
+      appenders.install(outputs.get(outputs.size() - 1));
+    }
+
+    current = appenders;
+    // events still queued or buffered must not be lost if the JVM exits without going through executionFinished
+    if (SHUTDOWN_HOOK_REGISTERED.compareAndSet(false, true)) {
+      Runtime.getRuntime().addShutdownHook(new Thread(LogAppenders::stopCurrent, "sonar-scanner-log-flush"));
+    }
+    return appenders;
+  }
+
+  private static synchronized void stopCurrent() {
+    if (current != null) {
+      current.stop();
+    }
+  }
+
+  private static List<Appender<ILoggingEvent>> consoleAppenders(ch.qos.logback.classic.Logger rootLogger) {
+    List<Appender<ILoggingEvent>> result = new ArrayList<>();
+    rootLogger.iteratorForAppenders().forEachRemaining(a -> {
+      if (a instanceof ConsoleAppender) {
+        result.add(a);
+      }
+    });
+    return result;
+  }
+
+  private void install(Appender<ILoggingEvent> appender) {
+    rootLogger.addAppender(appender);
+    installed.add(appender);
+  }
+
+  /**
+   * Filters are evaluated in order, and the first one accepting an event bypasses the others: the level filters of an
+   * XML configuration would let DEBUG events through if the threshold came after them.
+   */
+  private static void addFirstFilter(Appender<ILoggingEvent> appender, Filter<ILoggingEvent> filter) {
+    var filters = appender.getCopyOfAttachedFiltersList();
+    appender.clearAllFilters();
+    appender.addFilter(filter);
+    filters.forEach(appender::addFilter);
+  }
+
+  private static void removeFilter(Appender<ILoggingEvent> appender, Filter<ILoggingEvent> filter) {
+    var filters = appender.getCopyOfAttachedFiltersList();
+    appender.clearAllFilters();
+    filters.stream()
+      .filter(f -> f != filter)
+      .forEach(appender::addFilter);
+  }
+
+  private static ThresholdFilter threshold(LoggerContext context, Level level) {
+    var filter = new ThresholdFilter();
+    filter.setContext(context);
+    filter.setLevel(level.toString());
+    filter.start();
+    return filter;
+  }
+
+  private static Appender<ILoggingEvent> fileAppender(LoggerContext context, String file, Properties props) {
+    var path = Paths.get(file).toAbsolutePath().toString();
+    var appender = new RollingFileAppender<ILoggingEvent>();
+    appender.setContext(context);
+    appender.setName("FILE");
+    appender.setFile(path);
+    // written in bulk, flushed when the buffer is full and on exit
+    appender.setImmediateFlush(false);
+
+    var rollingPolicy = new FixedWindowRollingPolicy();
+    rollingPolicy.setContext(context);
+    rollingPolicy.setParent(appender);
+    rollingPolicy.setFileNamePattern(path + ".%i.gz");
+    rollingPolicy.setMinIndex(1);
+    rollingPolicy.setMaxIndex(parseInt(props, FILE_MAX_HISTORY, DEFAULT_FILE_MAX_HISTORY));
+    rollingPolicy.start();
+
+    var triggeringPolicy = new SizeBasedTriggeringPolicy<ILoggingEvent>();
+    triggeringPolicy.setContext(context);
+    triggeringPolicy.setMaxFileSize(FileSize.valueOf(props.getProperty(FILE_MAX_SIZE, DEFAULT_FILE_MAX_SIZE).trim()));
+    // the default (60s) lets a verbose analysis overshoot the maximum size by a lot
+    triggeringPolicy.setCheckIncrement(Duration.buildByMilliseconds(SIZE_CHECK_INCREMENT_MS));
+    triggeringPolicy.start();
+
+    var encoder = new PatternLayoutEncoder();
+    encoder.setContext(context);
+    encoder.setPattern(PATTERN);
+    encoder.start();
+
+    appender.setRollingPolicy(rollingPolicy);
+    appender.setTriggeringPolicy(triggeringPolicy);
+    appender.setEncoder(encoder);
+    appender.start();
+    return appender;
+  }
+
+  private static Overflow parseOverflow(@Nullable String value) {
+    if (value == null) {
+      return Overflow.BLOCK;
+    }
+    try {
+      return Overflow.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid value for property " + ASYNC_OVERFLOW + ": " + value + " (expected 'block' or 'drop')", e);
+    }
+  }
+
+  private static int parseInt(Properties props, String key, int defaultValue) {
+    var value = props.getProperty(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value for property " + key + ": " + value, e);
+    }
+  }
+
+  long droppedEvents() {
+    return asyncAppender != null ? asyncAppender.dropped() : 0;
+  }
+
+  @Override
+  public void phaseStarted(Phases.Phase phase) {
+    // nothing to do
+  }
+
+  @Override
+  public void phaseFinished(Phases.Phase phase) {
+    // nothing to do
+  }
+
+  @Override
+  public void executionFinished(@Nullable Properties props, int exitStatus) {
+    var dropped = droppedEvents();
+    if (dropped > 0) {
+      LOG.warn("{} DEBUG/TRACE log events were dropped because the log output could not keep up", dropped);
+    }
+    stop();
+  }
+
+  /**
+   * Flushes and closes the installed appenders. Console appenders are attached back to the root logger.
+   */
+  synchronized void stop() {
+    installed.forEach(a -> {
+      rootLogger.detachAppender(a);
+      a.stop();
+    });
+    installed.clear();
+    detachedConsoleAppenders.forEach(rootLogger::addAppender);
+    detachedConsoleAppenders.clear();
+    consoleFilters.forEach(LogAppenders::removeFilter);
+    consoleFilters.clear();
+  }
+
+  /**
+   * Forwards events to several appenders. Only called by the worker thread of the asynchronous appender.
+   */
+  private static class FanOutAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    private final List<Appender<ILoggingEvent>> appenders;
+
+    FanOutAppender(List<Appender<ILoggingEvent>> appenders) {
+      this.appenders = List.copyOf(appenders);
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+      for (Appender<ILoggingEvent> appender : appenders) {
+        appender.doAppend(event);
+      }
+    }
+
+    @Override
+    public void stop() {
+      // console appenders are still used once the asynchronous appender is stopped
+      appenders.stream()
+        .filter(a -> !(a instanceof ConsoleAppender))
+        .forEach(Appender::stop);
+      super.stop();
+    }
+  }
+
+  static class DroppingAsyncAppender extends AsyncAppender {
+    private final Overflow overflow;
+    private final LongAdder dropped = new LongAdder();
+
+    DroppingAsyncAppender(Overflow overflow) {
+      this.overflow = overflow;
+    }
+
+    @Override
+    public void start() {
+      // threshold (remaining capacity) under which discardable events are dropped
+      setDiscardingThreshold(overflow == Overflow.DROP ? Math.max(1, getQueueSize() / 5) : 0);
+      super.start();
+    }
+
+    long dropped() {
+      return dropped.sum();
+    }
+
+    @Override
+    protected boolean isDiscardable(ILoggingEvent event) {
+      // only called when the queue is almost full
+      if (event.getLevel().toInt() <= Level.DEBUG_INT) {
+        dropped.increment();
+        return true;
+      }
+      return false;
+    }
+  }
+}
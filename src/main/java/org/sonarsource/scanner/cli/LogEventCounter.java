@@ -0,0 +1,80 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the log events going through the root logger, by level. Counting is lock-free so that it does not slow
+ * down the logging threads.
+ */
+class LogEventCounter extends UnsynchronizedAppenderBase<ILoggingEvent> {
+  static final List<Level> LEVELS = List.of(Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR);
+
+  // filled once, then only read while logging
+  private final Map<Level, LongAdder> counters = new LinkedHashMap<>();
+  private final LongAdder total = new LongAdder();
+
+  LogEventCounter() {
+    setName("EVENT_COUNTER");
+    LEVELS.forEach(l -> counters.put(l, new LongAdder()));
+  }
+
+  static LogEventCounter install() {
+    var rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    var counter = new LogEventCounter();
+    counter.setContext(rootLogger.getLoggerContext());
+    counter.start();
+    rootLogger.addAppender(counter);
+    return counter;
+  }
+
+  void uninstall() {
+    var rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    rootLogger.detachAppender(this);
+    stop();
+  }
+
+  @Override
+  protected void append(ILoggingEvent event) {
+    var counter = counters.get(event.getLevel());
+    if (counter != null) {
+      counter.increment();
+    }
+    total.increment();
+  }
+
+  long count(Level level) {
+    var counter = counters.get(level);
+    return counter != null ? counter.sum() : 0;
+  }
+
+  long total() {
+    return total.sum();
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Levels of individual loggers, given as a comma-separated list of {@code <logger or package name>=<level>} in
+ * {@value #LEVELS}, for example {@code org.sonarsource.scanner.lib=DEBUG,org.sonarsource.scanner.lib.internal.http=TRACE}.
+ * <p>
+ * Levels are set on the logback loggers themselves rather than evaluated by a filter: logback resolves the effective
+ * level of a logger once, so a disabled statement costs a single integer comparison and no event is built.
+ */
+class LogLevels {
+  static final String LEVELS = "sonar.log.levels";
+
+  private static final Set<String> VALID_LEVELS = Set.of("TRACE", "DEBUG", "INFO", "WARN", "ERROR", "OFF");
+
+  private LogLevels() {
+    // only static methods
+  }
+
+  static void apply(Properties props) {
+    var context = (LoggerContext) LoggerFactory.getILoggerFactory();
+    var value = props.getProperty(LEVELS);
+    if (value != null) {
+      parse(value).forEach((name, level) -> context.getLogger(name).setLevel(level));
+    }
+  }
+
+  static Map<String, Level> parse(String value) {
+    Map<String, Level> levels = new LinkedHashMap<>();
+    for (String entry : value.split(",")) {
+      if (entry.isBlank()) {
+        continue;
+      }
+      var separator = entry.indexOf('=');
+      var prefix = separator > 0 ? entry.substring(0, separator).trim() : "";
+      var level = separator > 0 ? entry.substring(separator + 1).trim().toUpperCase(Locale.ENGLISH) : "";
+      if (prefix.isEmpty() || !VALID_LEVELS.contains(level)) {
+        throw new IllegalArgumentException("Invalid value for property " + LEVELS + ": '" + entry.trim()
+          + "' (expected <logger or package name>=<TRACE|DEBUG|INFO|WARN|ERROR|OFF>)");
+      }
+      levels.put(prefix, Level.toLevel(level));
+    }
+    return levels;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import ch.qos.logback.classic.ClassicConstants;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.Configurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.ContextAwareBase;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Logger;
+
+/**
+ * Configures logback programmatically, which is much cheaper at startup than parsing an XML configuration: events
+ * below ERROR are written to the standard output and the others to the standard error. Registered as a service in
+ * {@code META-INF/services}.
+ * <p>
+ * An XML configuration can still be used by setting the {@code logback.configurationFile} system property, for
+ * example in {@code SONAR_SCANNER_OPTS}: this configurator then lets logback load it.
+ */
+public class LogbackConfigurator extends ContextAwareBase implements Configurator {
+  static final String STDOUT = "STDOUT";
+  static final String STDERR = "STDERR";
+  static final String PATTERN = "%date{HH:mm:ss.SSS} %-5level %msg%n";
+
+  @Override
+  public ExecutionStatus configure(LoggerContext context) {
+    if (System.getProperty(ClassicConstants.CONFIG_FILE_PROPERTY) != null) {
+      return ExecutionStatus.INVOKE_NEXT_IF_ANY;
+    }
+    var rootLogger = context.getLogger(Logger.ROOT_LOGGER_NAME);
+    rootLogger.setLevel(Level.INFO);
+    rootLogger.addAppender(console(context, STDOUT, "System.out", new ErrorThresholdFilter(false)));
+    rootLogger.addAppender(console(context, STDERR, "System.err", new ErrorThresholdFilter(true)));
+    return ExecutionStatus.DO_NOT_INVOKE_NEXT_IF_ANY;
+  }
+
+  private static ConsoleAppender<ILoggingEvent> console(LoggerContext context, String name, String target, Filter<ILoggingEvent> filter) {
+    var encoder = new PatternLayoutEncoder();
+    encoder.setContext(context);
+    encoder.setPattern(PATTERN);
+    encoder.start();
+
+    filter.setContext(context);
+    filter.start();
+
+    var appender = new ConsoleAppender<ILoggingEvent>();
+    appender.setContext(context);
+    appender.setName(name);
+    appender.setTarget(target);
+    appender.setEncoder(encoder);
+    appender.addFilter(filter);
+    appender.start();
+    return appender;
+  }
+
+  /**
+   * Splits events on a single comparison with the ERROR level. Events are not accepted, only denied, so that filters
+   * added later, for example by {@link LogAppenders}, still apply.
+   */
+  static class ErrorThresholdFilter extends Filter<ILoggingEvent> {
+    private final boolean errors;
+
+    ErrorThresholdFilter(boolean errors) {
+      this.errors = errors;
+    }
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+      return (event.getLevel().levelInt >= Level.ERROR_INT) == errors ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+  }
+}
@@ -22,9 +22,13 @@ package org.sonarsource.scanner.cli;
 import ch.qos.logback.classic.Level;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapResult;
 import org.sonarsource.scanner.lib.ScannerEngineBootstrapper;
+import org.sonarsource.scanner.lib.ScannerEngineFacade;
 import org.sonarsource.scanner.lib.ScannerProperties;
 
 /**
@@ -49,60 +53,264 @@ public class Main {
   private final Conf conf;
   private ScannerEngineBootstrapper scannerEngineBootstrapper;
   private final ScannerEngineBootstrapperFactory bootstrapperFactory;
+  private final Phases phases;
+  private final LifecycleDispatcher lifecycle;
+  private final RunSummary summary = new RunSummary();
+  private Profiler profiler;
+  private EngineTimings engineTimings;
+  private LogAppenders logAppenders;
+  private MetricsExporter metrics;
+  private PerfHistory perfHistory;
+  private Cancellation cancellation;
+  private final AtomicBoolean finished = new AtomicBoolean();
 
   Main(Exit exit, Cli cli, Conf conf, ScannerEngineBootstrapperFactory bootstrapperFactory) {
+    this(exit, cli, conf, bootstrapperFactory, new Phases());
+  }
+
+  Main(Exit exit, Cli cli, Conf conf, ScannerEngineBootstrapperFactory bootstrapperFactory, Phases phases) {
+    this(exit, cli, conf, bootstrapperFactory, phases, LifecycleDispatcher.load(System.getProperty(Conf.SCANNER_HOME)));
+  }
+
+  Main(Exit exit, Cli cli, Conf conf, ScannerEngineBootstrapperFactory bootstrapperFactory, Phases phases, LifecycleDispatcher lifecycle) {
     this.exit = exit;
     this.cli = cli;
     this.conf = conf;
     this.bootstrapperFactory = bootstrapperFactory;
+    this.phases = phases;
+    this.lifecycle = lifecycle;
+    phases.addListener(summary).addListener(lifecycle);
   }
 
   public static void main(String[] args) {
     Exit exit = new Exit();
-    Cli cli = new Cli(exit).parse(args);
-    Main main = new Main(exit, cli, new Conf(cli, System.getenv()), new ScannerEngineBootstrapperFactory());
+    Phases phases = new Phases().addListener(new Tracer(System.getenv()));
+    Cli cli;
+    try (var phase = phases.start(Phases.CLI_PARSING)) {
+      cli = new Cli(exit).parse(args);
+    }
+    Main main = new Main(exit, cli, new Conf(cli, System.getenv(), phases), new ScannerEngineBootstrapperFactory(), phases);
     main.analyze();
   }
 
   void analyze() {
+    long startNanos = System.nanoTime();
     Stats stats = new Stats().start();
+    if (cli.isProfilingEnabled()) {
+      startProfiling();
+    }
 
     int status = Exit.INTERNAL_ERROR;
+    Properties p = null;
     try {
-      Properties p = conf.properties();
-      checkSkip(p);
-      configureLogging(p);
+      p = conf.properties();
+      lifecycle.configurationLoaded(p);
+      if (cli.isPerfReportOnly()) {
+        PerfHistory.report(p, System.getenv());
+        status = Exit.SUCCESS;
+        return;
+      }
+      if (isSkipped(p)) {
+        // ends like any other execution, so that the run summary records the configuration
+        LOG.info("SonarScanner CLI analysis skipped");
+        status = Exit.SUCCESS;
+        return;
+      }
+      configure(p);
       init(p);
-      try (var result = scannerEngineBootstrapper.bootstrap()) {
-        if (result.isSuccessful()) {
-          var engine = result.getEngineFacade();
-          var success = engine.analyze((Map) p);
-          if (success) {
-            displayExecutionResult(stats, SUCCESS);
-            status = Exit.SUCCESS;
+      // after the early exits of the configuration, which would otherwise leave the termination hook registered
+      configureCancellation(p, stats, startNanos);
+      try (var result = bootstrap()) {
+        lifecycle.bootstrapFinished(result.isSuccessful());
+        var connection = Crac.isEnabled(p) ? Crac.connectionSettings(p, System.getenv()) : null;
+        if (connection != null && result.isSuccessful() && Crac.checkpointRestore()) {
+          p = restoredProperties(stats);
+          if (!connection.equals(Crac.connectionSettings(p, System.getenv()))) {
+            // the bootstrapped engine keeps the HTTP client and the credentials of the checkpoint
+            LOG.info("Connection settings changed since the checkpoint, bootstrapping the scanner engine again");
+            scannerEngineBootstrapper = bootstrapperFactory.create(p, cli.getInvokedFrom());
+            try (var restoredResult = bootstrap()) {
+              status = analyze(restoredResult, p, stats);
+            }
           } else {
-            displayExecutionResult(stats, FAILURE);
-            status = Exit.SCANNER_ENGINE_ERROR;
+            status = analyze(result, p, stats);
           }
         } else {
-          LOG.debug("Scanner engine bootstrapping failed");
-          displayExecutionResult(stats, FAILURE);
-          status = Exit.INTERNAL_ERROR;
+          status = analyze(result, p, stats);
         }
       }
     } catch (Throwable e) {
+      lifecycle.analysisFailed(e);
       displayExecutionResult(stats, FAILURE);
       showError(e, cli.isDebugEnabled());
       status = isUserError(e) ? Exit.USER_ERROR : Exit.INTERNAL_ERROR;
     } finally {
+      if (cancellation != null && cancellation.isTimedOut()) {
+        status = Exit.TIMEOUT;
+      }
+      finish(p, status);
+    }
+  }
+
+  /**
+   * Applies the properties to the logging, the listeners of the execution and the options of the scanner engine, and
+   * checks them.
+   */
+  private void configure(Properties p) {
+    configureLogging(p);
+    configureLogAppenders(p);
+    configureHttpTransport(p);
+    collectEngineTimings(p);
+    configureProfiling(p);
+    configureMetrics(p);
+    configurePerfHistory(p);
+    preflight(p);
+  }
+
+  /**
+   * The restored scanner runs in another environment: properties, including credentials, are read again and override
+   * the ones used for the bootstrap. They are configured again, since what the configuration added to the previous
+   * ones, such as the options of the scanner engine JVM, is lost.
+   */
+  Properties restoredProperties(Stats stats) {
+    var p = conf.properties();
+    configure(p);
+    // the timeout counts from the restore, the checkpoint may have been taken long before
+    configureCancellation(p, stats, System.nanoTime());
+    return p;
+  }
+
+  /**
+   * Ends the execution, only once: it may also be called by the {@link Cancellation} watchdog.
+   */
+  private void finish(@Nullable Properties p, int status) {
+    if (finished.compareAndSet(false, true)) {
+      phases.executionFinished(p, status);
       exit.exit(status);
     }
   }
 
-  private void checkSkip(Properties properties) {
-    if ("true".equalsIgnoreCase(properties.getProperty(ScannerProperties.SKIP))) {
-      LOG.info("SonarScanner CLI analysis skipped");
-      exit.exit(Exit.SUCCESS);
+  private ScannerEngineBootstrapResult bootstrap() {
+    try (var phase = phases.start(Phases.BOOTSTRAP)) {
+      return scannerEngineBootstrapper.bootstrap();
+    }
+  }
+
+  private int analyze(ScannerEngineBootstrapResult result, Properties p, Stats stats) {
+    if (!result.isSuccessful()) {
+      LOG.debug("Scanner engine bootstrapping failed");
+      displayExecutionResult(stats, FAILURE);
+      return Exit.INTERNAL_ERROR;
+    }
+    // once the engine is in the user cache
+    configureEngineCds(p);
+    if (analyze(result.getEngineFacade(), p)) {
+      displayExecutionResult(stats, SUCCESS);
+      return Exit.SUCCESS;
+    }
+    displayExecutionResult(stats, FAILURE);
+    return Exit.SCANNER_ENGINE_ERROR;
+  }
+
+  private boolean analyze(ScannerEngineFacade engine, Properties p) {
+    try (var phase = phases.start(Phases.ANALYSIS);
+      var stallDetector = StallDetector.isEnabled(p) ? StallDetector.start(p) : null) {
+      lifecycle.analysisStarted();
+      FileListReference.expand(p);
+      return engine.analyze((Map) p);
+    }
+  }
+
+  private void startProfiling() {
+    try {
+      profiler = Profiler.start();
+      phases.addListener(profiler);
+    } catch (RuntimeException | LinkageError e) {
+      LOG.warn("Profiling is not supported by this Java runtime", e);
+    }
+  }
+
+  private void configureProfiling(Properties p) {
+    if (profiler == null && Profiler.isEnabled(p)) {
+      startProfiling();
+    }
+    if (profiler != null) {
+      profiler.configureEngine(p);
+    }
+  }
+
+  private void configureEngineCds(Properties p) {
+    if (EngineCds.isEnabled(p)) {
+      var engineCds = EngineCds.configure(p, System.getenv(), engineTimings);
+      summary.addSection("engineCds", engineCds::toJson);
+    }
+  }
+
+  private static boolean isSkipped(Properties properties) {
+    return "true".equalsIgnoreCase(properties.getProperty(ScannerProperties.SKIP));
+  }
+
+  private void configureLogAppenders(Properties p) {
+    if (logAppenders != null) {
+      // configured again after a restore
+      logAppenders.stop();
+      phases.removeListener(logAppenders);
+      logAppenders = null;
+    }
+    if (LogAppenders.isEnabled(p)) {
+      logAppenders = LogAppenders.configure(p);
+      phases.addListener(logAppenders);
+    }
+  }
+
+  private static void configureHttpTransport(Properties p) {
+    if (HttpTransport.isEnabled(p)) {
+      HttpTransport.configure(p);
+    }
+  }
+
+  private void collectEngineTimings(Properties p) {
+    if (engineTimings == null && EngineTimings.isEnabled(p)) {
+      engineTimings = EngineTimings.install();
+      phases.addListener(engineTimings);
+      summary.addSection("engineTimings", engineTimings::toJson);
+    }
+  }
+
+  private void configureMetrics(Properties p) {
+    if (metrics == null && MetricsExporter.isEnabled(p)) {
+      metrics = new MetricsExporter(LogEventCounter.install()).start(p);
+      phases.addListener(metrics);
+    }
+  }
+
+  private void configurePerfHistory(Properties p) {
+    if (perfHistory == null && PerfHistory.isEnabled(p)) {
+      perfHistory = PerfHistory.create(p, System.getenv(), summary, engineTimings);
+      if (perfHistory != null) {
+        phases.addListener(perfHistory);
+      }
+    }
+  }
+
+  private void configureCancellation(Properties p, Stats stats, long startNanos) {
+    if (cancellation != null) {
+      // configured again after a restore
+      cancellation.stop();
+      phases.removeListener(cancellation);
+    }
+    cancellation = Cancellation.start(p, startNanos, () -> {
+      displayExecutionResult(stats, FAILURE);
+      finish(p, Exit.TIMEOUT);
+    });
+    phases.addListener(cancellation);
+  }
+
+  private void preflight(Properties p) {
+    if (Preflight.isEnabled(p)) {
+      try (var phase = phases.start(Phases.PREFLIGHT)) {
+        Preflight.check(p);
+      }
     }
   }
 
@@ -122,6 +330,7 @@ public class Main {
       var rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
       rootLogger.setLevel(Level.DEBUG);
     }
+    LogLevels.apply(props);
   }
 
   private static void displayExecutionResult(Stats stats, String resultMsg) {
@@ -153,7 +362,7 @@ public class Main {
 
   private static boolean isUserError(Throwable e) {
     // class not available at compile time (loaded by isolated classloader)
-    return "org.sonar.api.utils.MessageException".equals(e.getClass().getName());
+    return "org.sonar.api.utils.MessageException".equals(e.getClass().getName()) || e instanceof Preflight.PreflightException;
   }
 
   private void suggestDebugMode() {
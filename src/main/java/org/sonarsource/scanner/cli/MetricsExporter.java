@@ -0,0 +1,236 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Exposes JVM and scanner metrics in the Prometheus text format, on an HTTP endpoint bound to localhost while the
+ * analysis runs, and/or in a file for the node exporter textfile collector, written when the execution is over.
+ */
+class MetricsExporter implements Phases.Listener {
+  static final String METRICS_PORT = "sonar.scanner.metricsPort";
+  static final String METRICS_TEXTFILE = "sonar.scanner.metricsTextFile";
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsExporter.class);
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  private static final double NANOS_PER_SECOND = 1_000_000_000d;
+  private static final double MILLIS_PER_SECOND = 1_000d;
+
+  private final LogEventCounter logEventCounter;
+  private final long startNanos = System.nanoTime();
+  private final Set<Phases.Phase> runningPhases = ConcurrentHashMap.newKeySet();
+  private final Map<String, Long> finishedPhaseNanos = new ConcurrentHashMap<>();
+  private HttpServer server;
+  private Path textFile;
+
+  MetricsExporter(LogEventCounter logEventCounter) {
+    this.logEventCounter = logEventCounter;
+  }
+
+  static boolean isEnabled(Properties props) {
+    return props.containsKey(METRICS_PORT) || props.containsKey(METRICS_TEXTFILE);
+  }
+
+  MetricsExporter start(Properties props) {
+    var port = props.getProperty(METRICS_PORT);
+    if (port != null) {
+      startServer(parsePort(port));
+    }
+    var file = props.getProperty(METRICS_TEXTFILE);
+    if (file != null) {
+      textFile = Paths.get(file.trim()).toAbsolutePath();
+    }
+    return this;
+  }
+
+  private static int parsePort(String port) {
+    try {
+      return Integer.parseInt(port.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value for property " + METRICS_PORT + ": " + port, e);
+    }
+  }
+
+  private void startServer(int port) {
+    try {
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    } catch (IOException e) {
+      LOG.warn("Unable to start the metrics endpoint on port {}", port, e);
+      return;
+    }
+    server.createContext("/metrics", this::handle);
+    server.start();
+    LOG.info("Metrics available at http://localhost:{}/metrics", server.getAddress().getPort());
+  }
+
+  @CheckForNull
+  InetSocketAddress address() {
+    return server != null ? server.getAddress() : null;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (var responseBody = exchange.getResponseBody()) {
+      var body = render(null).getBytes(UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      responseBody.write(body);
+    }
+  }
+
+  @Override
+  public void phaseStarted(Phases.Phase phase) {
+    runningPhases.add(phase);
+  }
+
+  @Override
+  public void phaseFinished(Phases.Phase phase) {
+    runningPhases.remove(phase);
+    finishedPhaseNanos.merge(phase.name(), phase.durationNanos(), Long::sum);
+  }
+
+  @Override
+  public void executionFinished(@Nullable Properties props, int exitStatus) {
+    if (server != null) {
+      server.stop(0);
+    }
+    if (textFile != null) {
+      writeTextFile(render(exitStatus));
+    }
+  }
+
+  private void writeTextFile(String metrics) {
+    // the textfile collector may read at any time: write aside and move atomically
+    var tmp = textFile.resolveSibling(textFile.getFileName() + ".tmp");
+    try {
+      if (textFile.getParent() != null) {
+        Files.createDirectories(textFile.getParent());
+      }
+      Files.writeString(tmp, metrics, UTF_8);
+      Files.move(tmp, textFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn("Unable to write the metrics to {}", textFile, e);
+    }
+  }
+
+  String render(@Nullable Integer exitStatus) {
+    var out = new StringBuilder();
+    var memory = ManagementFactory.getMemoryMXBean();
+    var heap = memory.getHeapMemoryUsage();
+    gauge(out, "sonar_scanner_jvm_heap_used_bytes", "Used heap memory", heap.getUsed());
+    gauge(out, "sonar_scanner_jvm_heap_committed_bytes", "Committed heap memory", heap.getCommitted());
+    gauge(out, "sonar_scanner_jvm_heap_max_bytes", "Maximum heap memory", heap.getMax());
+    gauge(out, "sonar_scanner_jvm_non_heap_used_bytes", "Used non-heap memory", memory.getNonHeapMemoryUsage().getUsed());
+
+    header(out, "sonar_scanner_jvm_gc_collections_total", "Number of garbage collections", "counter");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      sample(out, "sonar_scanner_jvm_gc_collections_total", "gc", gc.getName(), gc.getCollectionCount());
+    }
+    header(out, "sonar_scanner_jvm_gc_collection_seconds_total", "Time spent in garbage collections", "counter");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      sample(out, "sonar_scanner_jvm_gc_collection_seconds_total", "gc", gc.getName(), gc.getCollectionTime() / MILLIS_PER_SECOND);
+    }
+
+    var os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      var sunOs = (com.sun.management.OperatingSystemMXBean) os;
+      counter(out, "sonar_scanner_process_cpu_seconds_total", "CPU time used by the scanner process", sunOs.getProcessCpuTime() / NANOS_PER_SECOND);
+    }
+    gauge(out, "sonar_scanner_system_load_average", "System load average over the last minute", os.getSystemLoadAverage());
+    gauge(out, "sonar_scanner_available_processors", "Number of processors available to the JVM", os.getAvailableProcessors());
+
+    var threads = ManagementFactory.getThreadMXBean();
+    gauge(out, "sonar_scanner_jvm_threads", "Current number of live threads", threads.getThreadCount());
+    gauge(out, "sonar_scanner_jvm_threads_daemon", "Current number of live daemon threads", threads.getDaemonThreadCount());
+    gauge(out, "sonar_scanner_jvm_threads_peak", "Peak number of live threads", threads.getPeakThreadCount());
+
+    gauge(out, "sonar_scanner_elapsed_seconds", "Time elapsed since the beginning of the execution", (System.nanoTime() - startNanos) / NANOS_PER_SECOND);
+    header(out, "sonar_scanner_phase_running_seconds", "Time elapsed in the phases currently running", "gauge");
+    var now = System.nanoTime();
+    for (Phases.Phase phase : runningPhases) {
+      sample(out, "sonar_scanner_phase_running_seconds", "phase", phase.name(), (now - phase.startNanos()) / NANOS_PER_SECOND);
+    }
+    header(out, "sonar_scanner_phase_duration_seconds", "Total time spent in the finished phases", "gauge");
+    new TreeMap<>(finishedPhaseNanos).forEach((name, nanos) -> sample(out, "sonar_scanner_phase_duration_seconds", "phase", name, nanos / NANOS_PER_SECOND));
+
+    header(out, "sonar_scanner_log_events_total", "Number of log events, by level", "counter");
+    for (var level : LogEventCounter.LEVELS) {
+      sample(out, "sonar_scanner_log_events_total", "level", level.toString(), logEventCounter.count(level));
+    }
+
+    if (exitStatus != null) {
+      gauge(out, "sonar_scanner_exit_status", "Exit status of the scanner", exitStatus);
+      gauge(out, "sonar_scanner_last_run_timestamp_seconds", "End of the last execution", System.currentTimeMillis() / MILLIS_PER_SECOND);
+    }
+    return out.toString();
+  }
+
+  private static void gauge(StringBuilder out, String name, String help, double value) {
+    header(out, name, help, "gauge");
+    out.append(name).append(' ').append(format(value)).append('\n');
+  }
+
+  private static void counter(StringBuilder out, String name, String help, double value) {
+    header(out, name, help, "counter");
+    out.append(name).append(' ').append(format(value)).append('\n');
+  }
+
+  private static void header(StringBuilder out, String name, String help, String type) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String label, String labelValue, double value) {
+    out.append(name).append('{').append(label).append("=\"").append(escape(labelValue)).append("\"} ").append(format(value)).append('\n');
+  }
+
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static String format(double value) {
+    if (value == Math.rint(value) && !Double.isInfinite(value)) {
+      return String.valueOf((long) value);
+    }
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Discovers the modules of a project by looking for {@code sonar-project.properties} files below its base directory,
+ * instead of relying on {@code sonar.modules}. Directories are scanned in parallel, in a pool of their own since
+ * threads mostly wait for the file system. Directories that cannot be listed are skipped with a warning. Symbolic
+ * links are not followed, and hidden directories, directories named as in {@value #PRUNED_DIRECTORIES} (by default usual dependency and build
+ * output directories), and directories matching {@value #EXCLUSIONS} are not scanned at all.
+ * <p>
+ * Discovery only applies when the root configuration does not declare {@code sonar.modules}, see
+ * {@link Conf#properties()}.
+ * <p>
+ * A module is a child of the closest module found in one of its parent directories, and its identifier is the path
+ * from that parent, so that the properties are the same as if {@code sonar.modules} had been declared in every
+ * parent module. Path separators, dots and commas are replaced with underscores in identifiers, and two modules with
+ * the same parent and the same identifier make the discovery fail.
+ */
+class ModuleDiscovery {
+  static final String DISCOVER_MODULES = "sonar.scanner.discoverModules";
+  static final String EXCLUSIONS = "sonar.scanner.discoverModules.exclusions";
+  static final String MAX_DEPTH = "sonar.scanner.discoverModules.maxDepth";
+  static final String PRUNED_DIRECTORIES = "sonar.scanner.discoverModules.prunedDirectories";
+  static final List<String> DEFAULT_PRUNED_DIRECTORIES = List.of("node_modules", "bower_components", "vendor", "target", "build", "dist");
+
+  private static final Logger LOG = LoggerFactory.getLogger(ModuleDiscovery.class);
+  private static final String SONAR_PROJECT_PROPERTIES_FILENAME = "sonar-project.properties";
+  private static final int DEFAULT_MAX_DEPTH = 10;
+  private static final int PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+  private static final Pattern RESERVED_CHARACTERS = Pattern.compile("[/\\\\.,]");
+
+  static final class Module {
+    private final String id;
+    private final Path baseDir;
+    private final List<Module> children;
+
+    private Module(String id, Path baseDir, List<Module> children) {
+      this.id = id;
+      this.baseDir = baseDir;
+      this.children = children;
+    }
+
+    String id() {
+      return id;
+    }
+
+    Path baseDir() {
+      return baseDir;
+    }
+
+    Path propertiesFile() {
+      return baseDir.resolve(SONAR_PROJECT_PROPERTIES_FILENAME);
+    }
+
+    List<Module> children() {
+      return children;
+    }
+  }
+
+  private final Set<String> prunedDirectories;
+  private final List<PathMatcher> exclusions;
+  private final int maxDepth;
+
+  ModuleDiscovery(List<String> prunedDirectories, List<String> exclusions, int maxDepth) {
+    this.prunedDirectories = Set.copyOf(prunedDirectories);
+    this.exclusions = exclusions.stream()
+      .map(p -> FileSystems.getDefault().getPathMatcher("glob:" + p))
+      .collect(Collectors.toList());
+    this.maxDepth = maxDepth;
+  }
+
+  static boolean isEnabled(Properties props) {
+    return "true".equalsIgnoreCase(props.getProperty(DISCOVER_MODULES));
+  }
+
+  static ModuleDiscovery create(Properties props) {
+    // an empty value prunes no directory
+    var prunedDirectories = props.containsKey(PRUNED_DIRECTORIES)
+      ? List.of(Conf.getListFromProperty(props, PRUNED_DIRECTORIES))
+      : DEFAULT_PRUNED_DIRECTORIES;
+    List<String> exclusions = new ArrayList<>();
+    Collections.addAll(exclusions, Conf.getListFromProperty(props, EXCLUSIONS));
+    var maxDepth = props.getProperty(MAX_DEPTH);
+    try {
+      return new ModuleDiscovery(prunedDirectories, exclusions, maxDepth != null ? Integer.parseInt(maxDepth.trim()) : DEFAULT_MAX_DEPTH);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value for property " + MAX_DEPTH + ": " + maxDepth, e);
+    }
+  }
+
+  /**
+   * @return the top-level modules found below the given directory, sorted by identifier
+   */
+  List<Module> discover(Path baseDir) {
+    return discover(baseDir, module -> {
+      // nothing to do
+    });
+  }
+
+  /**
+   * @param onModule called from the threads of the discovery for every module found, for example to read its
+   *                 configuration file while other directories are still being scanned
+   * @return the top-level modules found below the given directory, sorted by identifier
+   */
+  List<Module> discover(Path baseDir, Consumer<Module> onModule) {
+    var pool = new ForkJoinPool(PARALLELISM);
+    try {
+      var modules = pool.invoke(new ScanTask(baseDir, baseDir, baseDir, 0, onModule));
+      checkUniqueIds(baseDir, modules);
+      return modules;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private boolean isPruned(Path rootDir, Path dir) {
+    var name = dir.getFileName().toString();
+    if (name.startsWith(".") || prunedDirectories.contains(name)) {
+      return true;
+    }
+    var relativePath = rootDir.relativize(dir);
+    return exclusions.stream().anyMatch(m -> m.matches(relativePath));
+  }
+
+  /**
+   * Scans a directory and returns the modules found in it and below it, relative to the closest parent module.
+   */
+  private class ScanTask extends RecursiveTask<List<Module>> {
+    private final Path rootDir;
+    private final Path parentModuleDir;
+    private final Path dir;
+    private final int depth;
+    private final Consumer<Module> onModule;
+
+    ScanTask(Path rootDir, Path parentModuleDir, Path dir, int depth, Consumer<Module> onModule) {
+      this.rootDir = rootDir;
+      this.parentModuleDir = parentModuleDir;
+      this.dir = dir;
+      this.depth = depth;
+      this.onModule = onModule;
+    }
+
+    @Override
+    protected List<Module> compute() {
+      var isModule = depth > 0 && Files.isRegularFile(dir.resolve(SONAR_PROJECT_PROPERTIES_FILENAME));
+      var moduleDirForChildren = isModule ? dir : parentModuleDir;
+      List<ScanTask> subTasks = new ArrayList<>();
+      if (depth < maxDepth) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+          for (Path entry : entries) {
+            var attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attributes.isDirectory() && !isPruned(rootDir, entry)) {
+              subTasks.add(new ScanTask(rootDir, moduleDirForChildren, entry, depth + 1, onModule));
+            }
+          }
+        } catch (IOException e) {
+          LOG.warn("Unable to list the directory {}, modules below it are not discovered: {}", dir, e.toString());
+          subTasks.clear();
+        }
+      }
+      List<Module> found = invokeAll(subTasks).stream()
+        .flatMap(t -> t.join().stream())
+        .sorted(Comparator.comparing(Module::id).thenComparing(Module::baseDir))
+        .collect(Collectors.toList());
+      if (isModule) {
+        var module = new Module(moduleId(parentModuleDir, dir), dir, found);
+        onModule.accept(module);
+        return List.of(module);
+      }
+      return found;
+    }
+  }
+
+  /**
+   * @param modules the child modules of a same parent, sorted by identifier
+   */
+  private static void checkUniqueIds(Path parentModuleDir, List<Module> modules) {
+    for (Module module : modules) {
+      checkUniqueIds(module.baseDir(), module.children());
+    }
+    for (int i = 1; i < modules.size(); i++) {
+      var previous = modules.get(i - 1);
+      var module = modules.get(i);
+      if (previous.id().equals(module.id())) {
+        throw new IllegalStateException(String.format("The directories '%s' and '%s' of %s are both discovered as module '%s', rename one of them "
+          + "or exclude it with %s", parentModuleDir.relativize(previous.baseDir()), parentModuleDir.relativize(module.baseDir()), parentModuleDir,
+          module.id(), EXCLUSIONS));
+      }
+    }
+  }
+
+  /**
+   * Module identifiers are used in module keys, which do not accept path separators, in property keys, where dots
+   * separate the module from the property, and in the comma-separated list of {@code sonar.modules}.
+   */
+  private static String moduleId(Path parentModuleDir, Path dir) {
+    return RESERVED_CHARACTERS.matcher(parentModuleDir.relativize(dir).toString()).replaceAll("_");
+  }
+}
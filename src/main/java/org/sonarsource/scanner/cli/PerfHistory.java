@@ -0,0 +1,322 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Local history of the performance of the analyses of a project, stored under the Sonar user home as one JSON line
+ * per run in a file per project key and branch. Each line holds the duration of the run and of its phases, the
+ * resource usage of the scanner process and the size of the project.
+ * <p>
+ * A run is considered as a regression when it is slower than the median of the previous successful runs by more than
+ * {@value #THRESHOLD} percent (20 by default).
+ */
+class PerfHistory implements Phases.Listener {
+  static final String HISTORY = "sonar.scanner.perfHistory";
+  static final String THRESHOLD = "sonar.scanner.perfHistory.threshold";
+
+  private static final Logger LOG = LoggerFactory.getLogger(PerfHistory.class);
+  private static final String HISTORY_DIR = "perf-history";
+  private static final int DEFAULT_THRESHOLD_PERCENT = 20;
+  static final int WINDOW = 10;
+  private static final int MIN_RUNS = 3;
+  private static final int MAX_RUNS = 200;
+  private static final int REPORT_RUNS = 20;
+
+  private final Path file;
+  private final int thresholdPercent;
+  private final RunSummary summary;
+  private final EngineTimings engineTimings;
+
+  PerfHistory(Path file, int thresholdPercent, RunSummary summary, EngineTimings engineTimings) {
+    this.file = file;
+    this.thresholdPercent = thresholdPercent;
+    this.summary = summary;
+    this.engineTimings = engineTimings;
+  }
+
+  static boolean isEnabled(Properties props) {
+    return "true".equalsIgnoreCase(props.getProperty(HISTORY));
+  }
+
+  @CheckForNull
+  static PerfHistory create(Properties props, Map<String, String> env, RunSummary summary, EngineTimings engineTimings) {
+    var file = historyFile(props, env);
+    if (file == null) {
+      LOG.warn("The performance history is not recorded because the project key is not defined");
+      return null;
+    }
+    return new PerfHistory(file, threshold(props), summary, engineTimings);
+  }
+
+  /**
+   * File holding the history of the project, or null if the project key is not known.
+   */
+  @CheckForNull
+  static Path historyFile(Properties props, Map<String, String> env) {
+    var projectKey = props.getProperty("sonar.projectKey");
+    if (projectKey == null || projectKey.isBlank()) {
+      return null;
+    }
+    var branch = props.getProperty("sonar.branch.name", "");
+    var name = sanitize(projectKey.trim()) + (branch.isBlank() ? "" : ("@" + sanitize(branch.trim()))) + ".jsonl";
+    return userHome(props, env).resolve(HISTORY_DIR).resolve(name);
+  }
+
+  static Path userHome(Properties props, Map<String, String> env) {
+    var userHome = props.getProperty("sonar.userHome");
+    if (userHome == null || userHome.isBlank()) {
+      userHome = env.get("SONAR_USER_HOME");
+    }
+    if (userHome == null || userHome.isBlank()) {
+      return Paths.get(System.getProperty("user.home"), ".sonar");
+    }
+    return Paths.get(userHome.trim());
+  }
+
+  private static String sanitize(String value) {
+    return value.replaceAll("[^A-Za-z0-9._-]", "_");
+  }
+
+  @Override
+  public void phaseStarted(Phases.Phase phase) {
+    // nothing to do
+  }
+
+  @Override
+  public void phaseFinished(Phases.Phase phase) {
+    // phases are taken from the run summary, which also saw the ones started before this listener was added
+  }
+
+  @Override
+  public void executionFinished(@Nullable Properties props, int exitStatus) {
+    if (props == null) {
+      return;
+    }
+    var run = toJson(props, exitStatus);
+    try {
+      var runs = read(file);
+      runs.add(run);
+      write(file, runs);
+      LOG.debug("Performance of the run added to {}", file);
+      if (exitStatus == Exit.SUCCESS) {
+        checkRegression(runs, thresholdPercent);
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to update the performance history {}", file, e);
+    }
+  }
+
+  private JsonObject toJson(Properties props, int exitStatus) {
+    var run = new JsonObject();
+    run.addProperty("time", Instant.now().toString());
+    run.addProperty("exitStatus", exitStatus);
+    run.addProperty("timeMs", summary.elapsedMs());
+    var phaseTimes = new JsonObject();
+    summary.phaseTimes().forEach(phaseTimes::addProperty);
+    run.add("phases", phaseTimes);
+    var resourceUsage = ScannerLifecycleListener.ResourceUsage.current();
+    resourceUsage.cpuTime().ifPresent(cpuTime -> run.addProperty("cpuMs", cpuTime.toMillis()));
+    run.addProperty("gcMs", resourceUsage.gcTime().toMillis());
+    run.addProperty("peakHeapBytes", resourceUsage.peakHeapBytes());
+    run.addProperty("modules", Conf.moduleCount(props));
+    run.addProperty("files", engineTimings.filesIndexed());
+    return run;
+  }
+
+  private static void checkRegression(List<JsonObject> runs, int thresholdPercent) {
+    var last = runs.size() - 1;
+    var timeMs = timeMs(runs.get(last), "timeMs");
+    var median = median(runs, last, "timeMs");
+    if (median != null && isRegression(timeMs, median, thresholdPercent)) {
+      LOG.atWarn()
+        .addArgument(() -> Stats.formatTime(timeMs))
+        .addArgument(() -> percent(timeMs, median))
+        .addArgument(() -> Stats.formatTime(median))
+        .log("This analysis took {}, {} more than the median of the previous analyses ({})");
+    }
+  }
+
+  /**
+   * Logs the history of the project, with the runs slower than the rolling median by more than the threshold.
+   */
+  static void report(Properties props, Map<String, String> env) {
+    var file = historyFile(props, env);
+    if (file == null) {
+      LOG.warn("No performance history: the project key is not defined");
+      return;
+    }
+    List<JsonObject> runs;
+    try {
+      runs = read(file);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read the performance history " + file, e);
+    }
+    if (runs.isEmpty()) {
+      LOG.info("No performance history in {}. Enable it with -D{}=true", file, HISTORY);
+      return;
+    }
+    var threshold = threshold(props);
+    LOG.info("Performance history ({} runs, regression threshold {}%): {}", runs.size(), threshold, file);
+    for (int i = Math.max(0, runs.size() - REPORT_RUNS); i < runs.size(); i++) {
+      var run = runs.get(i);
+      var timeMs = timeMs(run, "timeMs");
+      var median = median(runs, i, "timeMs");
+      var status = run.has("exitStatus") && run.get("exitStatus").getAsInt() != Exit.SUCCESS ? "  FAILED" : "";
+      if (median == null) {
+        LOG.info("  {}  {}{}", run.get("time").getAsString(), Stats.formatTime(timeMs), status);
+      } else {
+        var flag = status.isEmpty() && isRegression(timeMs, median, threshold) ? "  REGRESSION" : status;
+        LOG.info("  {}  {}  median {}  {}{}", run.get("time").getAsString(), Stats.formatTime(timeMs), Stats.formatTime(median),
+          percent(timeMs, median), flag);
+      }
+    }
+    reportPhases(runs, threshold);
+  }
+
+  private static void reportPhases(List<JsonObject> runs, int threshold) {
+    var last = runs.size() - 1;
+    var phases = runs.get(last).getAsJsonObject("phases");
+    if (phases == null || median(runs, last, "timeMs") == null) {
+      return;
+    }
+    LOG.info("Phases of the last run:");
+    for (String phase : phases.keySet()) {
+      var timeMs = phases.get(phase).getAsLong();
+      var median = median(runs, last, phase);
+      if (median == null) {
+        LOG.info("  {}  {}", phase, Stats.formatTime(timeMs));
+      } else {
+        LOG.info("  {}  {}  median {}  {}{}", phase, Stats.formatTime(timeMs), Stats.formatTime(median), percent(timeMs, median),
+          isRegression(timeMs, median, threshold) ? "  REGRESSION" : "");
+      }
+    }
+  }
+
+  /**
+   * Median of the given measure over the successful runs preceding the run at the given index, within the window.
+   * Null if there are not enough runs to compare with.
+   */
+  @CheckForNull
+  static Long median(List<JsonObject> runs, int index, String measure) {
+    List<Long> values = new ArrayList<>();
+    for (int i = index - 1; i >= 0 && values.size() < WINDOW; i--) {
+      var run = runs.get(i);
+      if (run.has("exitStatus") && run.get("exitStatus").getAsInt() != Exit.SUCCESS) {
+        continue;
+      }
+      var value = timeMs(run, measure);
+      if (value >= 0) {
+        values.add(value);
+      }
+    }
+    if (values.size() < MIN_RUNS) {
+      return null;
+    }
+    Collections.sort(values);
+    var middle = values.size() / 2;
+    return values.size() % 2 == 1 ? values.get(middle) : ((values.get(middle - 1) + values.get(middle)) / 2);
+  }
+
+  private static long timeMs(JsonObject run, String measure) {
+    if ("timeMs".equals(measure)) {
+      return run.has("timeMs") ? run.get("timeMs").getAsLong() : -1;
+    }
+    var phases = run.getAsJsonObject("phases");
+    return phases != null && phases.has(measure) ? phases.get(measure).getAsLong() : -1;
+  }
+
+  private static boolean isRegression(long timeMs, long median, int thresholdPercent) {
+    return timeMs * 100 > median * (100L + thresholdPercent);
+  }
+
+  private static String percent(long timeMs, long median) {
+    if (median == 0) {
+      return "n/a";
+    }
+    var percent = Math.round((timeMs - median) * 100d / median);
+    return (percent >= 0 ? "+" : "") + percent + "%";
+  }
+
+  private static int threshold(Properties props) {
+    var value = props.getProperty(THRESHOLD);
+    if (value == null) {
+      return DEFAULT_THRESHOLD_PERCENT;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value for property " + THRESHOLD + ": " + value, e);
+    }
+  }
+
+  static List<JsonObject> read(Path file) throws IOException {
+    List<JsonObject> runs = new ArrayList<>();
+    if (!Files.exists(file)) {
+      return runs;
+    }
+    for (String line : Files.readAllLines(file, UTF_8)) {
+      try {
+        var element = JsonParser.parseString(line);
+        if (element.isJsonObject()) {
+          runs.add(element.getAsJsonObject());
+        }
+      } catch (JsonParseException e) {
+        // partially written line, ignore it
+      }
+    }
+    return runs;
+  }
+
+  private static void write(Path file, List<JsonObject> runs) throws IOException {
+    Files.createDirectories(file.getParent());
+    if (runs.size() > MAX_RUNS) {
+      // keep the file small, the oldest runs are not used anymore
+      List<String> lines = new ArrayList<>();
+      runs.subList(runs.size() - MAX_RUNS, runs.size()).forEach(r -> lines.add(r.toString()));
+      var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.write(tmp, lines, UTF_8);
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } else {
+      Files.writeString(file, runs.get(runs.size() - 1).toString() + "\n", UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+  }
+}
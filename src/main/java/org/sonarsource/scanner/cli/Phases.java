@@ -0,0 +1,155 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Tracks the phases of a CLI execution (configuration loading, bootstrap, analysis...) and notifies registered
+ * listeners when they start and finish. Phases opened from the same thread are nested.
+ */
+class Phases {
+  static final String CLI_PARSING = "cli-parsing";
+  static final String CONFIGURATION = "configuration";
+  static final String CONFIGURATION_FILE = "configuration-file";
+  static final String MODULE_DISCOVERY = "module-discovery";
+  static final String PROPERTY_RESOLUTION = "property-resolution";
+  static final String PREFLIGHT = "preflight";
+  static final String BOOTSTRAP = "bootstrap";
+  static final String ANALYSIS = "analysis";
+
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private final ThreadLocal<Phase> current = new ThreadLocal<>();
+
+  Phases addListener(Listener listener) {
+    listeners.add(listener);
+    return this;
+  }
+
+  void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  Phase start(String name) {
+    return start(name, null);
+  }
+
+  Phase start(String name, @Nullable String detail) {
+    return start(name, detail, current.get());
+  }
+
+  /**
+   * Starts a phase nested in a phase of another thread, for work done in parallel. Listeners must then be thread-safe.
+   */
+  Phase start(String name, @Nullable String detail, @Nullable Phase parent) {
+    var phase = new Phase(this, name, detail, parent, current.get());
+    current.set(phase);
+    listeners.forEach(l -> l.phaseStarted(phase));
+    return phase;
+  }
+
+  /**
+   * The innermost phase running in the current thread.
+   */
+  @CheckForNull
+  Phase current() {
+    return current.get();
+  }
+
+  private void finish(Phase phase) {
+    current.set(phase.previous);
+    listeners.forEach(l -> l.phaseFinished(phase));
+  }
+
+  /**
+   * Notifies listeners that the execution is over, right before the JVM exits.
+   *
+   * @param props the analysis properties, or null if the configuration could not be loaded
+   */
+  void executionFinished(@Nullable Properties props, int exitStatus) {
+    listeners.forEach(l -> l.executionFinished(props, exitStatus));
+  }
+
+  interface Listener {
+    void phaseStarted(Phase phase);
+
+    void phaseFinished(Phase phase);
+
+    default void executionFinished(@Nullable Properties props, int exitStatus) {
+      // nothing to do by default
+    }
+  }
+
+  static class Phase implements AutoCloseable {
+    private final Phases phases;
+    private final String name;
+    private final String detail;
+    private final Phase parent;
+    private final Phase previous;
+    private final long startNanos;
+    private long durationNanos = -1;
+
+    private Phase(Phases phases, String name, @Nullable String detail, @Nullable Phase parent, @Nullable Phase previous) {
+      this.phases = phases;
+      this.name = name;
+      this.detail = detail;
+      this.parent = parent;
+      this.previous = previous;
+      this.startNanos = System.nanoTime();
+    }
+
+    String name() {
+      return name;
+    }
+
+    @CheckForNull
+    String detail() {
+      return detail;
+    }
+
+    @CheckForNull
+    Phase parent() {
+      return parent;
+    }
+
+    long startNanos() {
+      return startNanos;
+    }
+
+    /**
+     * Duration in nanoseconds, or -1 while the phase is still running.
+     */
+    long durationNanos() {
+      return durationNanos;
+    }
+
+    @Override
+    public void close() {
+      if (durationNanos < 0) {
+        durationNanos = System.nanoTime() - startNanos;
+        phases.finish(this);
+      }
+    }
+  }
+}
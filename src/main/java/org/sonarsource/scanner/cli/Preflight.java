@@ -0,0 +1,169 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+
+/**
+ * Checks, before the scanner engine is downloaded, that the paths explicitly referenced by the configuration of the
+ * project and of all its modules exist. The checks are run in parallel and all the problems are reported at once.
+ * Patterns (containing {@code *} or {@code ?}) are left to the scanner engine. The paths listed in
+ * {@link FileListReference file lists} are checked as well. The paths of aggregator modules, which declare
+ * {@code sonar.modules}, are not checked: their children inherit them and resolve them against their own base
+ * directory.
+ */
+class Preflight {
+  static final String PREFLIGHT = "sonar.scanner.preflight";
+
+  private static final String PROJECT_BASEDIR = "sonar.projectBaseDir";
+  private static final String MODULES = "sonar.modules";
+  static final List<String> PATH_PROPERTIES = List.of(
+    "sonar.sources",
+    "sonar.tests",
+    "sonar.binaries",
+    "sonar.java.binaries",
+    "sonar.java.test.binaries",
+    "sonar.java.libraries",
+    "sonar.java.test.libraries");
+
+  private Preflight() {
+    // only static methods
+  }
+
+  static boolean isEnabled(Properties props) {
+    return "true".equalsIgnoreCase(props.getProperty(PREFLIGHT));
+  }
+
+  /**
+   * @throws PreflightException listing all the problems found
+   */
+  static void check(Properties props) {
+    var problems = problems(props);
+    if (!problems.isEmpty()) {
+      throw new PreflightException("Invalid analysis configuration (set " + PREFLIGHT + "=false to skip this check):\n  - "
+        + String.join("\n  - ", problems));
+    }
+  }
+
+  static List<String> problems(Properties props) {
+    var rootBaseDir = FileListReference.rootBaseDir(props);
+    List<PathCheck> checks = new ArrayList<>();
+    for (String key : props.stringPropertyNames()) {
+      if (key.equals(PROJECT_BASEDIR) || key.endsWith("." + PROJECT_BASEDIR)) {
+        var prefix = key.substring(0, key.length() - PROJECT_BASEDIR.length());
+        var module = prefix.isEmpty() ? "Project" : ("Module '" + prefix.substring(0, prefix.length() - 1) + "'");
+        var baseDir = Conf.getAbsolutePath(props.getProperty(key), rootBaseDir);
+        checks.add(new PathCheck(module, key, baseDir, true));
+        addPathChecks(props, prefix, module, baseDir, rootBaseDir, checks);
+      }
+    }
+    if (!props.containsKey(PROJECT_BASEDIR)) {
+      addPathChecks(props, "", "Project", rootBaseDir, rootBaseDir, checks);
+    }
+    return checks.parallelStream()
+      .map(PathCheck::problem)
+      .filter(Objects::nonNull)
+      .sorted()
+      .collect(Collectors.toList());
+  }
+
+  private static void addPathChecks(Properties props, String prefix, String module, Path baseDir, Path rootBaseDir,
+    List<PathCheck> checks) {
+    if (props.containsKey(prefix + MODULES)) {
+      return;
+    }
+    for (String property : PATH_PROPERTIES) {
+      var key = prefix + property;
+      var propertyValue = props.getProperty(key);
+      if (propertyValue == null) {
+        continue;
+      }
+      if (FileListReference.isReference(propertyValue)) {
+        addFileListChecks(FileListReference.path(propertyValue, rootBaseDir), module, property, baseDir, checks);
+        continue;
+      }
+      for (String value : Conf.getListFromProperty(props, key)) {
+        addPathCheck(value, module, property, baseDir, checks);
+      }
+    }
+  }
+
+  private static void addFileListChecks(Path file, String module, String property, Path baseDir, List<PathCheck> checks) {
+    var fileCheck = new PathCheck(module, property + " file list", file, false);
+    if (fileCheck.problem() != null) {
+      checks.add(fileCheck);
+      return;
+    }
+    try (var values = FileListReference.values(file)) {
+      values.forEach(value -> addPathCheck(value, module, property, baseDir, checks));
+    } catch (IOException | UncheckedIOException e) {
+      throw new IllegalStateException("Unable to read the file list of property '" + property + "': " + file, e);
+    }
+  }
+
+  private static void addPathCheck(String value, String module, String property, Path baseDir, List<PathCheck> checks) {
+    if (!value.isEmpty() && value.indexOf('*') < 0 && value.indexOf('?') < 0) {
+      checks.add(new PathCheck(module, property, Conf.getAbsolutePath(value, baseDir), false));
+    }
+  }
+
+  private static class PathCheck {
+    private final String module;
+    private final String property;
+    private final Path path;
+    private final boolean directory;
+
+    PathCheck(String module, String property, Path path, boolean directory) {
+      this.module = module;
+      this.property = property;
+      this.path = path;
+      this.directory = directory;
+    }
+
+    @CheckForNull
+    String problem() {
+      if (!Files.exists(path)) {
+        return module + ": " + property + " does not exist: " + path;
+      }
+      if (directory && !Files.isDirectory(path)) {
+        return module + ": " + property + " is not a directory: " + path;
+      }
+      if (!Files.isReadable(path)) {
+        return module + ": " + property + " is not readable: " + path;
+      }
+      return null;
+    }
+  }
+
+  static class PreflightException extends IllegalStateException {
+    PreflightException(String message) {
+      super(message);
+    }
+  }
+}
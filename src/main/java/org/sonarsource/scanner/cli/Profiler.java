@@ -0,0 +1,168 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java Flight Recorder session covering a CLI execution. Each {@link Phases.Phase} is emitted as a custom
+ * {@link PhaseEvent}, and the forked scanner engine is asked to record its own flight recording next to ours.
+ * When stopped, recordings are dumped in the working directory together with their collapsed stacks.
+ */
+class Profiler implements Phases.Listener {
+  static final String PROFILE = "sonar.scanner.profile";
+
+  private static final Logger LOG = LoggerFactory.getLogger(Profiler.class);
+  private static final String CLI_RECORDING = "scanner-profile.jfr";
+  private static final String ENGINE_RECORDING = "scanner-engine-profile.jfr";
+  private static final String COLLAPSED_EXTENSION = ".collapsed";
+
+  private final Recording recording;
+  private final Map<Phases.Phase, PhaseEvent> events = new ConcurrentHashMap<>();
+  // where the engine records when the working directory cannot be passed in its options
+  private Path engineRecordingTempFile;
+
+  private Profiler(Recording recording) {
+    this.recording = recording;
+  }
+
+  static boolean isEnabled(Properties props) {
+    return "true".equalsIgnoreCase(props.getProperty(PROFILE));
+  }
+
+  static Profiler start() {
+    Recording recording;
+    try {
+      recording = new Recording(Configuration.getConfiguration("profile"));
+    } catch (IOException | ParseException e) {
+      throw new IllegalStateException("Unable to load the Java Flight Recorder 'profile' settings", e);
+    }
+    recording.setName("SonarScanner CLI");
+    recording.enable(PhaseEvent.class);
+    recording.start();
+    LOG.info("Profiling enabled, recording with Java Flight Recorder");
+    return new Profiler(recording);
+  }
+
+  @Override
+  public void phaseStarted(Phases.Phase phase) {
+    var event = new PhaseEvent();
+    event.phase = phase.name();
+    event.detail = phase.detail();
+    event.begin();
+    events.put(phase, event);
+  }
+
+  @Override
+  public void phaseFinished(Phases.Phase phase) {
+    var event = events.remove(phase);
+    if (event != null) {
+      event.end();
+      event.commit();
+    }
+  }
+
+  /**
+   * Asks the forked scanner engine to start its own recording, dumped on exit in the working directory. If the path of
+   * the working directory contains whitespace, the engine records in the temporary directory and the recording is
+   * moved to the working directory when stopping.
+   */
+  void configureEngine(Properties props) {
+    var engineRecording = Conf.getWorkDir(props).resolve(ENGINE_RECORDING);
+    if (!JavaOpts.isSafe(engineRecording)) {
+      engineRecordingTempFile = Paths.get(System.getProperty("java.io.tmpdir")).toAbsolutePath()
+        .resolve("scanner-engine-profile-" + UUID.randomUUID() + ".jfr");
+      if (!JavaOpts.isSafe(engineRecordingTempFile)) {
+        LOG.warn("The scanner engine is not profiled: the paths of the working directory and of the temporary directory contain whitespace");
+        engineRecordingTempFile = null;
+        return;
+      }
+      engineRecording = engineRecordingTempFile;
+    }
+    JavaOpts.append(props, "-XX:StartFlightRecording=settings=profile,dumponexit=true,filename=" + engineRecording);
+  }
+
+  @CheckForNull
+  Path engineRecordingTempFile() {
+    return engineRecordingTempFile;
+  }
+
+  @Override
+  public void executionFinished(@Nullable Properties props, int exitStatus) {
+    stop(Conf.getWorkDir(props != null ? props : new Properties()));
+  }
+
+  void stop(Path workDir) {
+    try (recording) {
+      recording.stop();
+      Files.createDirectories(workDir);
+      var cliRecording = workDir.resolve(CLI_RECORDING);
+      recording.dump(cliRecording);
+      writeCollapsedStacks(cliRecording);
+      var engineRecording = workDir.resolve(ENGINE_RECORDING);
+      if (engineRecordingTempFile != null && Files.isRegularFile(engineRecordingTempFile)) {
+        Files.move(engineRecordingTempFile, engineRecording, StandardCopyOption.REPLACE_EXISTING);
+      }
+      if (Files.isRegularFile(engineRecording)) {
+        writeCollapsedStacks(engineRecording);
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to write the profiling recording to {}", workDir, e);
+    }
+  }
+
+  private static void writeCollapsedStacks(Path recordingFile) throws IOException {
+    var collapsed = recordingFile.resolveSibling(recordingFile.getFileName() + COLLAPSED_EXTENSION);
+    CollapsedStacks.convert(recordingFile, collapsed);
+    LOG.info("Profiling recording: {} (collapsed stacks: {})", recordingFile, collapsed);
+  }
+
+  @Name("org.sonarsource.scanner.cli.Phase")
+  @Label("Scanner Phase")
+  @Category("SonarScanner CLI")
+  @Description("A phase of the SonarScanner CLI execution")
+  static class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Detail")
+    String detail;
+  }
+}
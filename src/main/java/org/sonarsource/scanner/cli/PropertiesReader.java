@@ -0,0 +1,131 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.StringJoiner;
+import javax.annotation.Nullable;
+
+/**
+ * Reads properties given with {@code --properties-from}, either in the {@code .properties} format or as a JSON object,
+ * directly into the properties of the command line. In JSON, nested objects are flattened with '.' separated keys,
+ * so that module properties can be grouped, and arrays are joined with commas.
+ */
+class PropertiesReader {
+  private PropertiesReader() {
+    // only static methods
+  }
+
+  /**
+   * @param source name of the file, or '-' for the standard input. JSON is detected from the '.json' extension, or
+   *               from the first character of the content.
+   * @return the number of properties that replaced a different value already defined in the target
+   */
+  static int read(Reader reader, String source, Properties target) throws IOException {
+    var buffered = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    if (source.toLowerCase(Locale.ENGLISH).endsWith(".json") || startsWithBrace(buffered)) {
+      return readJson(buffered, target);
+    }
+    var properties = new Properties();
+    properties.load(buffered);
+    int overridden = 0;
+    for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+      if (isOverride(target.put(entry.getKey(), entry.getValue()), entry.getValue())) {
+        overridden++;
+      }
+    }
+    return overridden;
+  }
+
+  private static boolean isOverride(@Nullable Object previousValue, Object value) {
+    return previousValue != null && !previousValue.equals(value);
+  }
+
+  private static boolean startsWithBrace(BufferedReader reader) throws IOException {
+    reader.mark(1);
+    int c = reader.read();
+    while (c != -1 && Character.isWhitespace(c)) {
+      reader.mark(1);
+      c = reader.read();
+    }
+    reader.reset();
+    return c == '{';
+  }
+
+  private static int readJson(Reader reader, Properties target) throws IOException {
+    var json = new JsonReader(reader);
+    int overridden = readObject(json, "", target);
+    if (json.peek() != JsonToken.END_DOCUMENT) {
+      throw new IllegalStateException("Unexpected content after the JSON object at " + json.getPath());
+    }
+    return overridden;
+  }
+
+  private static int readObject(JsonReader json, String prefix, Properties target) throws IOException {
+    int overridden = 0;
+    json.beginObject();
+    while (json.hasNext()) {
+      var key = prefix + json.nextName();
+      var token = json.peek();
+      if (token == JsonToken.BEGIN_OBJECT) {
+        overridden += readObject(json, key + ".", target);
+      } else if (token == JsonToken.NULL) {
+        json.nextNull();
+      } else {
+        var value = token == JsonToken.BEGIN_ARRAY ? readArray(json) : readValue(json);
+        if (isOverride(target.setProperty(key, value), value)) {
+          overridden++;
+        }
+      }
+    }
+    json.endObject();
+    return overridden;
+  }
+
+  private static String readArray(JsonReader json) throws IOException {
+    var values = new StringJoiner(",");
+    json.beginArray();
+    while (json.hasNext()) {
+      values.add(readValue(json));
+    }
+    json.endArray();
+    return values.toString();
+  }
+
+  private static String readValue(JsonReader json) throws IOException {
+    var token = json.peek();
+    switch (token) {
+      case STRING:
+      case NUMBER:
+        return json.nextString();
+      case BOOLEAN:
+        return String.valueOf(json.nextBoolean());
+      default:
+        throw new IllegalStateException("Unsupported JSON value at " + json.getPath() + ": " + token);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Machine-readable summary of the execution, written as JSON to {@value #SUMMARY_FILE} when the scanner exits. It
+ * holds the exit status and the duration of each {@link Phases phase}, and other components can add their own sections.
+ */
+class RunSummary implements Phases.Listener {
+  static final String SUMMARY_FILE = "sonar.scanner.summaryFile";
+
+  private static final Logger LOG = LoggerFactory.getLogger(RunSummary.class);
+
+  private final Instant startTime = Instant.now();
+  private final long startNanos = System.nanoTime();
+  private final List<JsonObject> phases = Collections.synchronizedList(new ArrayList<>());
+  private final Map<String, Supplier<JsonElement>> sections = Collections.synchronizedMap(new LinkedHashMap<>());
+
+  /**
+   * Adds a section to the summary. The supplier is only called when the summary is written.
+   */
+  RunSummary addSection(String name, Supplier<JsonElement> section) {
+    sections.put(name, section);
+    return this;
+  }
+
+  long elapsedMs() {
+    return (System.nanoTime() - startNanos) / 1_000_000;
+  }
+
+  /**
+   * Time spent in each phase, summed when a phase was executed several times.
+   */
+  Map<String, Long> phaseTimes() {
+    Map<String, Long> times = new LinkedHashMap<>();
+    synchronized (phases) {
+      phases.forEach(p -> times.merge(p.get("name").getAsString(), p.get("timeMs").getAsLong(), Long::sum));
+    }
+    return times;
+  }
+
+  @Override
+  public void phaseStarted(Phases.Phase phase) {
+    // nothing to do
+  }
+
+  @Override
+  public void phaseFinished(Phases.Phase phase) {
+    var json = new JsonObject();
+    json.addProperty("name", phase.name());
+    if (phase.detail() != null) {
+      json.addProperty("detail", phase.detail());
+    }
+    json.addProperty("timeMs", phase.durationNanos() / 1_000_000);
+    phases.add(json);
+  }
+
+  @Override
+  public void executionFinished(@Nullable Properties props, int exitStatus) {
+    var file = props != null ? props.getProperty(SUMMARY_FILE) : null;
+    if (file == null || file.isBlank()) {
+      return;
+    }
+    write(Paths.get(file.trim()).toAbsolutePath(), toJson(exitStatus));
+  }
+
+  JsonObject toJson(int exitStatus) {
+    var json = new JsonObject();
+    json.addProperty("scannerVersion", ScannerVersion.version());
+    json.addProperty("startTime", startTime.toString());
+    json.addProperty("timeMs", elapsedMs());
+    json.addProperty("exitStatus", exitStatus);
+    var phaseArray = new JsonArray();
+    synchronized (phases) {
+      phases.forEach(phaseArray::add);
+    }
+    json.add("phases", phaseArray);
+    synchronized (sections) {
+      sections.forEach((name, section) -> json.add(name, section.get()));
+    }
+    return json;
+  }
+
+  private static void write(Path file, JsonObject json) {
+    try {
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+      Files.writeString(file, new GsonBuilder().setPrettyPrinting().create().toJson(json), UTF_8);
+      LOG.debug("Run summary written to {}", file);
+    } catch (IOException e) {
+      LOG.warn("Unable to write the run summary to {}", file, e);
+    }
+  }
+}
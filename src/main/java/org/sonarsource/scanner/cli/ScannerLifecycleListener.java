@@ -0,0 +1,137 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Receives the lifecycle events of a scanner execution, for example to push telemetry to an external system.
+ * <p>
+ * Implementations are discovered with {@link java.util.ServiceLoader}: they are declared in a
+ * {@code META-INF/services/org.sonarsource.scanner.cli.ScannerLifecycleListener} file, in a JAR put in the
+ * {@code extensions} directory of the scanner installation or on the classpath of the scanner.
+ * <p>
+ * Events are delivered in order on a dedicated thread, so that a slow listener does not delay the analysis. Events
+ * are dropped when a listener falls too far behind. Exceptions thrown by listeners are logged and ignored.
+ *
+ * @since 8.2
+ */
+public interface ScannerLifecycleListener {
+
+  /**
+   * The configuration is loaded from the configuration files, the environment and the command line.
+   *
+   * @param timings time spent in each step of the configuration loading, by name
+   * @param moduleCount number of modules of the project, 0 for a project without modules
+   */
+  default void configurationLoaded(Map<String, Duration> timings, int moduleCount) {
+    // nothing to do by default
+  }
+
+  /**
+   * The scanner engine is downloaded and started, or could not be.
+   */
+  default void bootstrapFinished(boolean successful, Duration duration) {
+    // nothing to do by default
+  }
+
+  default void analysisStarted() {
+    // nothing to do by default
+  }
+
+  /**
+   * The execution is over and the scanner is about to exit, whatever the outcome.
+   *
+   * @param exitStatus the exit code of the scanner, 0 on success
+   * @param duration duration of the whole execution
+   */
+  default void analysisFinished(int exitStatus, Duration duration, ResourceUsage resourceUsage) {
+    // nothing to do by default
+  }
+
+  /**
+   * The execution failed with an error. {@link #analysisFinished} is still called afterwards.
+   */
+  default void analysisFailed(Throwable error) {
+    // nothing to do by default
+  }
+
+  /**
+   * Resources used by the scanner process, excluding the scanner engine when it runs in a separate process.
+   */
+  final class ResourceUsage {
+    private final Duration cpuTime;
+    private final Duration gcTime;
+    private final long peakHeapBytes;
+
+    ResourceUsage(@Nullable Duration cpuTime, Duration gcTime, long peakHeapBytes) {
+      this.cpuTime = cpuTime;
+      this.gcTime = gcTime;
+      this.peakHeapBytes = peakHeapBytes;
+    }
+
+    static ResourceUsage current() {
+      Duration cpuTime = null;
+      var os = ManagementFactory.getOperatingSystemMXBean();
+      if (os instanceof com.sun.management.OperatingSystemMXBean) {
+        var cpuTimeNanos = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        cpuTime = cpuTimeNanos >= 0 ? Duration.ofNanos(cpuTimeNanos) : null;
+      }
+      var gcTimeMs = ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+        .filter(t -> t > 0)
+        .sum();
+      var peakHeapBytes = ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getType() == MemoryType.HEAP)
+        .map(MemoryPoolMXBean::getPeakUsage)
+        .mapToLong(u -> u != null ? u.getUsed() : 0)
+        .sum();
+      return new ResourceUsage(cpuTime, Duration.ofMillis(gcTimeMs), peakHeapBytes);
+    }
+
+    /**
+     * CPU time used by the process, if the Java runtime reports it.
+     */
+    public Optional<Duration> cpuTime() {
+      return Optional.ofNullable(cpuTime);
+    }
+
+    /**
+     * Time spent in garbage collections.
+     */
+    public Duration gcTime() {
+      return gcTime;
+    }
+
+    /**
+     * Sum of the peak usages of the heap memory pools.
+     */
+    public long peakHeapBytes() {
+      return peakHeapBytes;
+    }
+  }
+}
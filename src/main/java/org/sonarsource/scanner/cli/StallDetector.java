@@ -0,0 +1,267 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Watchdog detecting that the analysis stopped progressing, that is when nothing has been logged for
+ * {@value #STALL_TIMEOUT} seconds. From then on, and until something is logged again, it periodically writes thread
+ * dumps (and heap histograms if {@value #HEAP_HISTOGRAM} is set) to the {@code diagnostics} directory of the working
+ * directory, so that there is something to investigate when the CI job is eventually killed.
+ * <p>
+ * When the scanner engine runs in its own JVM, the dumps of its threads are also taken with the {@code jcmd} tool
+ * of the Java runtime, if available.
+ * <p>
+ * The watchdog only reads a counter and the CPU time of the process at each check, so it has no measurable cost while
+ * the analysis progresses.
+ */
+class StallDetector implements AutoCloseable {
+  static final String STALL_TIMEOUT = "sonar.scanner.stallTimeout";
+  static final String DUMP_INTERVAL = "sonar.scanner.stallDumpInterval";
+  static final String HEAP_HISTOGRAM = "sonar.scanner.stallHeapHistogram";
+
+  private static final Logger LOG = LoggerFactory.getLogger(StallDetector.class);
+  private static final Duration DEFAULT_DUMP_INTERVAL = Duration.ofMinutes(1);
+  private static final Duration MAX_CHECK_INTERVAL = Duration.ofSeconds(10);
+  private static final Duration JCMD_TIMEOUT = Duration.ofSeconds(30);
+  private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+  private static final int MAX_STACK_DEPTH = 1024;
+
+  private final Duration quietPeriod;
+  private final Duration dumpInterval;
+  private final boolean heapHistogram;
+  private final Path diagnosticsDir;
+  private final LogEventCounter logEventCounter;
+  private final Thread thread;
+
+  StallDetector(Duration quietPeriod, Duration dumpInterval, boolean heapHistogram, Path diagnosticsDir) {
+    this.quietPeriod = quietPeriod;
+    this.dumpInterval = dumpInterval;
+    this.heapHistogram = heapHistogram;
+    this.diagnosticsDir = diagnosticsDir;
+    this.logEventCounter = LogEventCounter.install();
+    this.thread = new Thread(this::watch, "sonar-scanner-stall-detector");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  static boolean isEnabled(Properties props) {
+    return props.getProperty(STALL_TIMEOUT) != null;
+  }
+
+  static StallDetector start(Properties props) {
+    var quietPeriod = Duration.ofSeconds(parsePositive(props, STALL_TIMEOUT));
+    var dumpInterval = props.getProperty(DUMP_INTERVAL) != null ? Duration.ofSeconds(parsePositive(props, DUMP_INTERVAL)) : DEFAULT_DUMP_INTERVAL;
+    var heapHistogram = "true".equalsIgnoreCase(props.getProperty(HEAP_HISTOGRAM));
+    return new StallDetector(quietPeriod, dumpInterval, heapHistogram, Conf.getWorkDir(props).resolve("diagnostics"));
+  }
+
+  private static long parsePositive(Properties props, String key) {
+    var value = props.getProperty(key);
+    try {
+      var seconds = Long.parseLong(value.trim());
+      if (seconds > 0) {
+        return seconds;
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new IllegalArgumentException("Invalid value for property " + key + ": " + value + " (expected a number of seconds)");
+  }
+
+  private void watch() {
+    var checkInterval = min(min(quietPeriod, dumpInterval).dividedBy(4), MAX_CHECK_INTERVAL).toMillis();
+    var lastCount = logEventCounter.total();
+    var lastProgressNanos = System.nanoTime();
+    var lastProgressCpuNanos = cpuTimeNanos();
+    var nextDumpNanos = Long.MAX_VALUE;
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        TimeUnit.MILLISECONDS.sleep(Math.max(1, checkInterval));
+        var count = logEventCounter.total();
+        var now = System.nanoTime();
+        if (count != lastCount) {
+          if (nextDumpNanos != Long.MAX_VALUE) {
+            LOG.info("The analysis is progressing again");
+          }
+          lastCount = count;
+          lastProgressNanos = now;
+          lastProgressCpuNanos = cpuTimeNanos();
+          nextDumpNanos = Long.MAX_VALUE;
+        } else if (nextDumpNanos == Long.MAX_VALUE && now - lastProgressNanos >= quietPeriod.toNanos()) {
+          nextDumpNanos = now;
+        }
+        if (now >= nextDumpNanos) {
+          var quietSeconds = TimeUnit.NANOSECONDS.toSeconds(now - lastProgressNanos);
+          var cpuSeconds = TimeUnit.NANOSECONDS.toSeconds(Math.max(0, cpuTimeNanos() - lastProgressCpuNanos));
+          writeDiagnostics(quietSeconds, cpuSeconds);
+          // the dump itself is logged, so do not mistake it for progress
+          lastCount = logEventCounter.total();
+          nextDumpNanos = now + dumpInterval.toNanos();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeDiagnostics(long quietSeconds, long cpuSeconds) {
+    var suffix = LocalDateTime.now().format(FILE_DATE_FORMAT);
+    var header = "No log for " + quietSeconds + "s, CPU time of the scanner during that period: " + cpuSeconds + "s\n\n";
+    try {
+      Files.createDirectories(diagnosticsDir);
+      var threadDump = diagnosticsDir.resolve("threads-" + suffix + ".txt");
+      Files.writeString(threadDump, header + threadDump(), UTF_8);
+      LOG.warn("No log for {}s, the analysis may be stalled. Thread dump written to {}", quietSeconds, threadDump);
+      if (heapHistogram) {
+        Files.writeString(diagnosticsDir.resolve("heap-histogram-" + suffix + ".txt"), header + heapHistogram(), UTF_8);
+      }
+      for (ProcessHandle child : javaChildProcesses()) {
+        jcmd(child, "Thread.print", diagnosticsDir.resolve("engine-threads-" + child.pid() + "-" + suffix + ".txt"));
+        if (heapHistogram) {
+          jcmd(child, "GC.class_histogram", diagnosticsDir.resolve("engine-heap-histogram-" + child.pid() + "-" + suffix + ".txt"));
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Unable to write diagnostics to {}", diagnosticsDir, e);
+    }
+  }
+
+  static String threadDump() {
+    var threads = ManagementFactory.getThreadMXBean().dumpAllThreads(true, true);
+    var sb = new StringBuilder();
+    for (ThreadInfo thread : threads) {
+      appendThread(sb, thread);
+    }
+    return sb.toString();
+  }
+
+  private static void appendThread(StringBuilder sb, ThreadInfo thread) {
+    // ThreadInfo.toString() only shows the 8 topmost frames
+    sb.append('"').append(thread.getThreadName()).append("\" #").append(thread.getThreadId());
+    if (thread.isDaemon()) {
+      sb.append(" daemon");
+    }
+    sb.append(' ').append(thread.getThreadState());
+    if (thread.getLockName() != null) {
+      sb.append(" on ").append(thread.getLockName());
+    }
+    if (thread.getLockOwnerName() != null) {
+      sb.append(" owned by \"").append(thread.getLockOwnerName()).append("\" #").append(thread.getLockOwnerId());
+    }
+    sb.append('\n');
+    var stackTrace = thread.getStackTrace();
+    for (int i = 0; i < stackTrace.length && i < MAX_STACK_DEPTH; i++) {
+      sb.append("\tat ").append(stackTrace[i]).append('\n');
+      for (MonitorInfo monitor : thread.getLockedMonitors()) {
+        if (monitor.getLockedStackDepth() == i) {
+          sb.append("\t- locked ").append(monitor).append('\n');
+        }
+      }
+    }
+    for (LockInfo lock : thread.getLockedSynchronizers()) {
+      sb.append("\t- locked ").append(lock).append('\n');
+    }
+    sb.append('\n');
+  }
+
+  private static String heapHistogram() {
+    try {
+      return (String) ManagementFactory.getPlatformMBeanServer().invoke(new ObjectName("com.sun.management:type=DiagnosticCommand"),
+        "gcClassHistogram", new Object[] {new String[0]}, new String[] {String[].class.getName()});
+    } catch (Exception e) {
+      return "Heap histogram not supported by this Java runtime: " + e.getMessage();
+    }
+  }
+
+  private static List<ProcessHandle> javaChildProcesses() {
+    return ProcessHandle.current().children()
+      .filter(p -> p.info().command().map(c -> Paths.get(c).getFileName().toString().startsWith("java")).orElse(false))
+      .collect(Collectors.toList());
+  }
+
+  private static void jcmd(ProcessHandle process, String command, Path output) {
+    var jcmd = Paths.get(System.getProperty("java.home"), "bin", isWindows() ? "jcmd.exe" : "jcmd");
+    if (!Files.isExecutable(jcmd)) {
+      LOG.debug("Unable to take diagnostics of process {}: {} not found", process.pid(), jcmd);
+      return;
+    }
+    try {
+      var jcmdProcess = new ProcessBuilder(jcmd.toString(), String.valueOf(process.pid()), command)
+        .redirectErrorStream(true)
+        .redirectOutput(output.toFile())
+        .start();
+      if (!jcmdProcess.waitFor(JCMD_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+        jcmdProcess.destroyForcibly();
+      }
+    } catch (IOException e) {
+      LOG.debug("Unable to take diagnostics of process {}", process.pid(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static boolean isWindows() {
+    return System.getProperty("os.name", "").startsWith("Windows");
+  }
+
+  private static long cpuTimeNanos() {
+    var os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+    }
+    return 0;
+  }
+
+  private static Duration min(Duration a, Duration b) {
+    return a.compareTo(b) <= 0 ? a : b;
+  }
+
+  @Override
+  public void close() {
+    thread.interrupt();
+    try {
+      thread.join(JCMD_TIMEOUT.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    logEventCounter.uninstall();
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Records the {@link Phases} of the execution as OpenTelemetry spans and exports them in the OTLP/JSON format, to a
+ * file and/or to a collector endpoint. If the {@code TRACEPARENT} environment variable holds a W3C trace context,
+ * spans are attached to that trace, so that the scanner shows up inside the CI pipeline trace.
+ */
+class Tracer implements Phases.Listener {
+  static final String TRACE_FILE = "sonar.scanner.traceFile";
+  static final String TRACE_ENDPOINT = "sonar.scanner.traceEndpoint";
+  static final String TRACEPARENT = "TRACEPARENT";
+
+  private static final Logger LOG = LoggerFactory.getLogger(Tracer.class);
+  private static final Pattern TRACEPARENT_PATTERN = Pattern.compile("[0-9a-f]{2}-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}");
+  private static final String ROOT_SPAN_NAME = "sonar-scanner";
+  private static final String SCOPE_NAME = "org.sonarsource.scanner.cli";
+  private static final int SPAN_KIND_INTERNAL = 1;
+  private static final int STATUS_OK = 1;
+  private static final int STATUS_ERROR = 2;
+  private static final Duration EXPORT_TIMEOUT = Duration.ofSeconds(10);
+
+  private final String traceId;
+  private final String parentSpanId;
+  private final String rootSpanId;
+  private final long startNanos;
+  private final long epochOffsetNanos;
+  private final Map<Phases.Phase, String> spanIds = new ConcurrentHashMap<>();
+  private final List<JsonObject> spans = Collections.synchronizedList(new ArrayList<>());
+
+  Tracer(Map<String, String> env) {
+    var traceparent = env.get(TRACEPARENT);
+    var matcher = TRACEPARENT_PATTERN.matcher(traceparent != null ? traceparent.trim().toLowerCase(Locale.ENGLISH) : "");
+    if (matcher.matches()) {
+      this.traceId = matcher.group(1);
+      this.parentSpanId = matcher.group(2);
+    } else {
+      this.traceId = randomHex(16);
+      this.parentSpanId = null;
+    }
+    this.rootSpanId = randomHex(8);
+    this.startNanos = System.nanoTime();
+    var now = Instant.now();
+    this.epochOffsetNanos = now.getEpochSecond() * 1_000_000_000L + now.getNano() - startNanos;
+  }
+
+  String traceId() {
+    return traceId;
+  }
+
+  @Override
+  public void phaseStarted(Phases.Phase phase) {
+    spanIds.put(phase, randomHex(8));
+  }
+
+  @Override
+  public void phaseFinished(Phases.Phase phase) {
+    var spanId = spanIds.get(phase);
+    if (spanId == null) {
+      return;
+    }
+    var parent = phase.parent();
+    var parentId = parent != null ? spanIds.get(parent) : rootSpanId;
+    var span = span(spanId, parentId, phase.name(), phase.startNanos(), phase.startNanos() + phase.durationNanos(), true);
+    if (phase.detail() != null) {
+      span.add("attributes", attributes(Map.of("sonar.scanner.phase.detail", phase.detail())));
+    }
+    spans.add(span);
+  }
+
+  @Override
+  public void executionFinished(@Nullable Properties props, int exitStatus) {
+    var root = span(rootSpanId, parentSpanId, ROOT_SPAN_NAME, startNanos, System.nanoTime(), exitStatus == Exit.SUCCESS);
+    root.add("attributes", attributes(Map.of("sonar.scanner.exit.status", String.valueOf(exitStatus))));
+    spans.add(root);
+
+    var file = property(props, TRACE_FILE);
+    var endpoint = property(props, TRACE_ENDPOINT);
+    if (file == null && endpoint == null) {
+      return;
+    }
+    var json = toOtlpJson().toString();
+    if (file != null) {
+      writeFile(Paths.get(file).toAbsolutePath(), json);
+    }
+    if (endpoint != null) {
+      post(endpoint, json, props);
+    }
+  }
+
+  @CheckForNull
+  private static String property(@Nullable Properties props, String key) {
+    var value = props != null ? props.getProperty(key) : System.getProperty(key);
+    return value == null || value.isBlank() ? null : value.trim();
+  }
+
+  JsonObject toOtlpJson() {
+    var resource = new JsonObject();
+    resource.add("attributes", attributes(Map.of("service.name", "sonar-scanner-cli", "service.version", ScannerVersion.version())));
+
+    var scope = new JsonObject();
+    scope.addProperty("name", SCOPE_NAME);
+    scope.addProperty("version", ScannerVersion.version());
+
+    var spanArray = new JsonArray();
+    synchronized (spans) {
+      spans.forEach(spanArray::add);
+    }
+    var scopeSpans = new JsonObject();
+    scopeSpans.add("scope", scope);
+    scopeSpans.add("spans", spanArray);
+
+    var resourceSpans = new JsonObject();
+    resourceSpans.add("resource", resource);
+    resourceSpans.add("scopeSpans", array(scopeSpans));
+
+    var root = new JsonObject();
+    root.add("resourceSpans", array(resourceSpans));
+    return root;
+  }
+
+  private JsonObject span(String spanId, @Nullable String parentId, String name, long startNanos, long endNanos, boolean ok) {
+    var span = new JsonObject();
+    span.addProperty("traceId", traceId);
+    span.addProperty("spanId", spanId);
+    if (parentId != null) {
+      span.addProperty("parentSpanId", parentId);
+    }
+    span.addProperty("name", name);
+    span.addProperty("kind", SPAN_KIND_INTERNAL);
+    // 64-bit integers are encoded as strings in OTLP/JSON
+    span.addProperty("startTimeUnixNano", String.valueOf(epochOffsetNanos + startNanos));
+    span.addProperty("endTimeUnixNano", String.valueOf(epochOffsetNanos + endNanos));
+    var status = new JsonObject();
+    status.addProperty("code", ok ? STATUS_OK : STATUS_ERROR);
+    span.add("status", status);
+    return span;
+  }
+
+  private static JsonArray attributes(Map<String, String> attributes) {
+    var array = new JsonArray();
+    attributes.forEach((key, value) -> {
+      var attributeValue = new JsonObject();
+      attributeValue.addProperty("stringValue", value);
+      var attribute = new JsonObject();
+      attribute.addProperty("key", key);
+      attribute.add("value", attributeValue);
+      array.add(attribute);
+    });
+    return array;
+  }
+
+  private static JsonArray array(JsonObject element) {
+    var array = new JsonArray();
+    array.add(element);
+    return array;
+  }
+
+  private static void writeFile(Path file, String json) {
+    try {
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+      Files.writeString(file, json, UTF_8);
+      LOG.debug("Trace exported to {}", file);
+    } catch (IOException e) {
+      LOG.warn("Unable to export the trace to {}", file, e);
+    }
+  }
+
+  private static void post(String endpoint, String json, @Nullable Properties props) {
+    try {
+      var request = HttpRequest.newBuilder(URI.create(endpoint))
+        .timeout(EXPORT_TIMEOUT)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(json, UTF_8))
+        .build();
+      var response = HttpTransport.newClientBuilder(props).connectTimeout(EXPORT_TIMEOUT).build()
+        .send(request, HttpResponse.BodyHandlers.discarding());
+      if (response.statusCode() / 100 == 2) {
+        LOG.debug("Trace exported to {}", endpoint);
+      } else {
+        LOG.warn("Unable to export the trace to {}: HTTP {}", endpoint, response.statusCode());
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.warn("Unable to export the trace to {}", endpoint, e);
+    } catch (InterruptedException e) {
+      LOG.warn("Interrupted while exporting the trace to {}", endpoint);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static String randomHex(int bytes) {
+    var random = ThreadLocalRandom.current();
+    var sb = new StringBuilder(bytes * 2);
+    for (int i = 0; i < bytes; i++) {
+      sb.append(String.format("%02x", random.nextInt(256)));
+    }
+    return sb.toString();
+  }
+}
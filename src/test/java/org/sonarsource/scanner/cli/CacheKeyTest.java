@@ -0,0 +1,41 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheKeyTest {
+
+  @Test
+  void should_be_short_and_stable() {
+    assertThat(CacheKey.of("https://sonar.example.com/api/v2"))
+      .hasSize(16)
+      .matches("[0-9a-f]+")
+      .isEqualTo(CacheKey.of("https://sonar.example.com/api/v2"))
+      .isNotEqualTo(CacheKey.of("https://sonar.example.org/api/v2"));
+  }
+
+  @Test
+  void should_separate_the_parts() {
+    assertThat(CacheKey.of("a", "bc")).isNotEqualTo(CacheKey.of("ab", "c"));
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class CancellationTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  @Test
+  void should_interrupt_main_thread_when_deadline_is_reached() throws Exception {
+    var interrupted = new CountDownLatch(1);
+    var mainThread = new Thread(() -> {
+      try {
+        Thread.sleep(60_000);
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+    });
+    mainThread.start();
+    var cancellation = new Cancellation(mainThread, () -> {
+    }, Duration.ofSeconds(30));
+
+    cancellation.startDeadline(Duration.ofMillis(50));
+
+    assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(cancellation.isTimedOut()).isTrue();
+    assertThat(cancellation.isCancelled()).isTrue();
+    cancellation.executionFinished(null, Exit.TIMEOUT);
+  }
+
+  @Test
+  void should_end_execution_if_main_thread_does_not_stop() throws Exception {
+    var unresponsive = new CountDownLatch(1);
+    var cancellation = new Cancellation(new Thread(() -> {
+    }), unresponsive::countDown, Duration.ofMillis(50));
+
+    cancellation.startDeadline(Duration.ofMillis(10));
+
+    assertThat(unresponsive.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(logTester.logs()).contains("The analysis did not stop within 0s after being cancelled");
+  }
+
+  @Test
+  void should_not_cancel_finished_execution() throws Exception {
+    var cancellation = new Cancellation(Thread.currentThread(), () -> {
+    }, Duration.ofSeconds(30));
+    cancellation.startDeadline(Duration.ofMillis(100));
+    cancellation.executionFinished(null, Exit.SUCCESS);
+
+    Thread.sleep(200);
+
+    assertThat(cancellation.isCancelled()).isFalse();
+    assertThat(Thread.interrupted()).isFalse();
+  }
+
+  @Test
+  void should_remove_shutdown_hook_when_execution_is_finished() {
+    var cancellation = Cancellation.start(new Properties(), System.nanoTime(), () -> {
+    });
+
+    cancellation.executionFinished(null, Exit.SUCCESS);
+    cancellation.executionFinished(null, Exit.SUCCESS);
+
+    assertThat(Runtime.getRuntime().removeShutdownHook(cancellation.shutdownHook())).isFalse();
+  }
+
+  @Test
+  void should_fail_on_invalid_timeout() {
+    var props = new Properties();
+    props.setProperty("sonar.scanner.timeout", "10min");
+    assertThatIllegalArgumentException().isThrownBy(() -> Cancellation.start(props, System.nanoTime(), () -> {
+    })).withMessage("Invalid value for property sonar.scanner.timeout: 10min (expected a number of seconds)");
+  }
+}
@@ -19,19 +19,27 @@
  */
 package org.sonarsource.scanner.cli;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.slf4j.event.Level;
 import testutils.LogTester;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 class CliTest {
@@ -94,6 +102,21 @@ class CliTest {
     assertThat(cli.properties()).containsEntry("sonar.verbose", "true");
   }
 
+  @Test
+  void should_enable_profiling() {
+    cli.parse(new String[]{"--profile"});
+    assertThat(cli.isProfilingEnabled()).isTrue();
+    assertThat(cli.properties()).containsEntry("sonar.scanner.profile", "true");
+  }
+
+  @Test
+  void should_only_display_perf_report() {
+    cli.parse(new String[]{"--perf-report"});
+    assertThat(cli.isPerfReportOnly()).isTrue();
+    cli.parse(new String[]{});
+    assertThat(cli.isPerfReportOnly()).isFalse();
+  }
+
   @Test
   void should_show_version() {
     cli.parse(new String[]{"-v"});
@@ -133,6 +156,103 @@ class CliTest {
     assertThat(cli.getInvokedFrom()).isEmpty();
   }
 
+  @Test
+  void should_expand_arguments_file(@TempDir Path dir) throws IOException {
+    var argsFile = dir.resolve("args");
+    Files.writeString(argsFile, "# generated\n-Dfoo=bar\n\n  -D\nhello=big world  \n--debug\n");
+
+    cli.parse(new String[]{"@" + argsFile, "-Dfoo=baz"});
+
+    assertThat(cli.properties()).contains(
+      entry("foo", "baz"),
+      entry("hello", "big world"));
+    assertThat(cli.isDebugEnabled()).isTrue();
+  }
+
+  @Test
+  void should_fail_on_missing_arguments_file(@TempDir Path dir) {
+    cli.parse(new String[]{"@" + dir.resolve("missing")});
+    assertThat(logTester.logs(Level.ERROR)).anyMatch(l -> l.startsWith("Unable to read the arguments file " + dir.resolve("missing")));
+    verify(exit).exit(Exit.INTERNAL_ERROR);
+  }
+
+  @Test
+  void should_fail_on_arguments_file_including_itself(@TempDir Path dir) throws IOException {
+    var first = dir.resolve("first");
+    var second = dir.resolve("second");
+    Files.writeString(first, "-Dfoo=bar\n@" + second + "\n");
+    Files.writeString(second, "@" + dir.resolve("../" + dir.getFileName() + "/first") + "\n-Dhello=world\n");
+
+    cli.parse(new String[]{"@" + first});
+
+    assertThat(logTester.logs(Level.ERROR)).contains("The arguments file " + dir.resolve("../" + dir.getFileName() + "/first") + " includes itself");
+    verify(exit).exit(Exit.INTERNAL_ERROR);
+    assertThat(cli.properties()).contains(entry("foo", "bar"), entry("hello", "world"));
+  }
+
+  @Test
+  void should_expand_the_same_arguments_file_twice(@TempDir Path dir) throws IOException {
+    var common = dir.resolve("common");
+    Files.writeString(common, "-Dfoo=bar\n");
+
+    cli.parse(new String[]{"@" + common, "-Dfoo=baz", "@" + common});
+
+    assertThat(cli.properties()).contains(entry("foo", "bar"));
+    verify(exit, never()).exit(anyInt());
+  }
+
+  @Test
+  void should_read_properties_file(@TempDir Path dir) throws IOException {
+    var file = dir.resolve("scanner.properties");
+    Files.writeString(file, "foo=bar\nmodule.sonar.sources=src\n");
+
+    cli.parse(new String[]{"-Dfoo=before", "--properties-from", file.toString()});
+
+    assertThat(cli.properties()).contains(
+      entry("foo", "bar"),
+      entry("module.sonar.sources", "src"));
+    assertThat(logTester.logs(Level.WARN)).contains("1 properties read from " + file + " override previously defined values");
+  }
+
+  @Test
+  void should_read_json_properties(@TempDir Path dir) throws IOException {
+    var file = dir.resolve("scanner.json");
+    Files.writeString(file, "{\"foo\": \"bar\", \"count\": 3, \"verbose\": true, \"ignored\": null,"
+      + " \"module\": {\"sonar.sources\": [\"src\", \"gen\"]}}");
+
+    cli.parse(new String[]{"--properties-from", file.toString()});
+
+    assertThat(cli.properties()).contains(
+      entry("foo", "bar"),
+      entry("count", "3"),
+      entry("verbose", "true"),
+      entry("module.sonar.sources", "src,gen"))
+      .doesNotContainKey("ignored");
+  }
+
+  @Test
+  void should_read_properties_from_stdin() {
+    cli = new Cli(exit, new ByteArrayInputStream("  {\"foo\": \"bar\"}".getBytes(UTF_8)));
+    cli.parse(new String[]{"--properties-from", "-"});
+    assertThat(cli.properties()).contains(entry("foo", "bar"));
+
+    cli = new Cli(exit, new ByteArrayInputStream("hello=world".getBytes(UTF_8)));
+    cli.parse(new String[]{"--properties-from", "-"});
+    assertThat(cli.properties()).contains(entry("hello", "world"));
+  }
+
+  @Test
+  void should_fail_on_invalid_properties_source(@TempDir Path dir) throws IOException {
+    var file = dir.resolve("scanner.json");
+    Files.writeString(file, "{\"foo\": {\"bar\": [{}]}}");
+
+    cli.parse(new String[]{"--properties-from", file.toString()});
+    assertThat(logTester.logs(Level.ERROR)).anyMatch(l -> l.startsWith("Unable to read properties from " + file + ": Unsupported JSON value"));
+
+    cli.parse(new String[]{"--properties-from"});
+    assertThat(logTester.logs(Level.ERROR)).contains("Missing argument for option --properties-from");
+  }
+
   @Test
   void should_disable_debug_mode_and_stacktrace_log_by_default() {
     cli.parse(new String[0]);
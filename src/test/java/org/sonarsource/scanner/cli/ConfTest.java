@@ -25,12 +25,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.commons.lang3.SystemUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.event.Level;
+import testutils.LogTester;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
@@ -41,6 +46,9 @@ import static org.mockito.Mockito.when;
 
 class ConfTest {
 
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
   private final Map<String, String> env = new HashMap<>();
   private final Properties args = new Properties();
   private final Cli cli = mock(Cli.class);
@@ -274,6 +282,117 @@ class ConfTest {
     }
   }
 
+  @Test
+  void should_load_modules_through_relative_and_chained_symlinks(@TempDir Path root) throws IOException {
+    assumeTrue(SystemUtils.IS_OS_UNIX);
+    Path project = Files.createDirectories(root.resolve("project"));
+    Path real = Files.createDirectories(root.resolve("real"));
+    Files.createDirectories(real.resolve("module1"));
+    Files.createDirectories(real.resolve("module2"));
+    Files.writeString(real.resolve("module1/sonar-project.properties"), "sonar.projectName=Module 1");
+    Files.writeString(real.resolve("module2/sonar-project.properties"), "sonar.projectName=Module 2");
+    // absolute symlink, relative symlink, and relative symlink to a symlink
+    Files.createSymbolicLink(project.resolve("abs"), real.resolve("module1"));
+    Files.createSymbolicLink(project.resolve("rel"), Paths.get("../real/module2"));
+    Files.createSymbolicLink(project.resolve("chain"), Paths.get("abs"));
+    Files.writeString(project.resolve("sonar-project.properties"), "sonar.modules=m1,m2,m3\n"
+      + "m1.sonar.projectBaseDir=abs\n"
+      + "m2.sonar.projectBaseDir=rel\n"
+      + "m3.sonar.projectBaseDir=chain\n");
+    args.setProperty("project.home", project.toString());
+
+    Properties properties = conf.properties();
+
+    assertThat(properties.getProperty("m1.sonar.projectName")).isEqualTo("Module 1");
+    assertThat(properties.getProperty("m2.sonar.projectName")).isEqualTo("Module 2");
+    assertThat(properties.getProperty("m3.sonar.projectName")).isEqualTo("Module 1");
+    assertThat(properties.getProperty("m2.sonar.projectBaseDir")).isEqualTo(project.resolve("rel").toString());
+    assertThat(properties.getProperty("m3.sonar.projectBaseDir")).isEqualTo(project.resolve("chain").toString());
+  }
+
+  @Test
+  void should_not_reload_settings_of_module_linking_to_parent(@TempDir Path root) throws IOException {
+    assumeTrue(SystemUtils.IS_OS_UNIX);
+    Path project = Files.createDirectories(root.resolve("project"));
+    Files.createSymbolicLink(project.resolve("self"), Paths.get("."));
+    Files.writeString(project.resolve("sonar-project.properties"), "sonar.modules=m1\n"
+      + "m1.sonar.projectBaseDir=self\n");
+    args.setProperty("project.home", project.toString());
+
+    Properties properties = conf.properties();
+
+    assertThat(properties.getProperty("m1.sonar.projectBaseDir")).isEqualTo(project.resolve("self").toString());
+    assertThat(properties).doesNotContainKey("m1.sonar.modules");
+  }
+
+  @Test
+  void should_discover_modules(@TempDir Path project) throws IOException {
+    Files.writeString(project.resolve("sonar-project.properties"), "sonar.projectKey=root\n"
+      + "sonar.scanner.discoverModules=true\n");
+    Files.createDirectories(project.resolve("libs/core/api"));
+    Files.writeString(project.resolve("libs/core/sonar-project.properties"), "sonar.projectName=Core\n");
+    Files.writeString(project.resolve("libs/core/api/sonar-project.properties"), "sonar.projectName=Api\n");
+    Files.createDirectories(project.resolve("app"));
+    Files.writeString(project.resolve("app/sonar-project.properties"), "sonar.projectName=App\n");
+    args.setProperty("project.home", project.toString());
+
+    Properties properties = conf.properties();
+
+    assertThat(properties)
+      .containsEntry("sonar.modules", "app,libs_core")
+      .containsEntry("app.sonar.projectName", "App")
+      .containsEntry("app.sonar.projectBaseDir", project.resolve("app").toString())
+      .containsEntry("libs_core.sonar.projectName", "Core")
+      .containsEntry("libs_core.sonar.modules", "api")
+      .containsEntry("libs_core.api.sonar.projectName", "Api")
+      .containsEntry("libs_core.api.sonar.projectBaseDir", project.resolve("libs/core/api").toString());
+  }
+
+  @Test
+  void should_time_configuration_files_of_discovered_modules(@TempDir Path project) throws IOException {
+    Files.writeString(project.resolve("sonar-project.properties"), "sonar.scanner.discoverModules=true\n");
+    Files.createDirectories(project.resolve("app"));
+    Files.writeString(project.resolve("app/sonar-project.properties"), "sonar.projectName=App\n");
+    args.setProperty("project.home", project.toString());
+    List<Phases.Phase> finished = new CopyOnWriteArrayList<>();
+    var phases = new Phases().addListener(new Phases.Listener() {
+      @Override
+      public void phaseStarted(Phases.Phase phase) {
+        // nothing to do
+      }
+
+      @Override
+      public void phaseFinished(Phases.Phase phase) {
+        finished.add(phase);
+      }
+    });
+
+    new Conf(cli, env, phases).properties();
+
+    var moduleFile = finished.stream()
+      .filter(p -> p.name().equals(Phases.CONFIGURATION_FILE) && project.resolve("app/sonar-project.properties").toString().equals(p.detail()))
+      .findFirst();
+    assertThat(moduleFile).isPresent();
+    assertThat(moduleFile.get().parent().name()).isEqualTo(Phases.MODULE_DISCOVERY);
+    assertThat(phases.current()).isNull();
+  }
+
+  // declared modules win, so that discovery can be enabled for all projects in the global configuration
+  @Test
+  void should_not_discover_modules_when_declared(@TempDir Path project) throws IOException {
+    Files.writeString(project.resolve("sonar-project.properties"), "sonar.modules=app\n"
+      + "sonar.scanner.discoverModules=true\n");
+    Files.createDirectories(project.resolve("app"));
+    Files.createDirectories(project.resolve("other"));
+    Files.writeString(project.resolve("other/sonar-project.properties"), "sonar.projectName=Other\n");
+    args.setProperty("project.home", project.toString());
+
+    Properties properties = conf.properties();
+
+    assertThat(properties).containsEntry("sonar.modules", "app").doesNotContainKey("other.sonar.projectName");
+    assertThat(logTester.logs(Level.WARN)).contains("Property 'sonar.scanner.discoverModules' is ignored because 'sonar.modules' is set");
+  }
+
   // SQSCANNER-24
   @Test
   void should_load_project_settings_using_property() throws Exception {
@@ -0,0 +1,67 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.util.Map;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.event.Level;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+class CracTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  @Test
+  void should_be_disabled_by_default() {
+    var props = new Properties();
+    assertThat(Crac.isEnabled(props)).isFalse();
+    props.setProperty(Crac.CHECKPOINT, "true");
+    assertThat(Crac.isEnabled(props)).isTrue();
+  }
+
+  @Test
+  void should_continue_without_checkpoint_on_unsupported_runtime() {
+    assumeFalse(Crac.isSupported());
+
+    assertThat(Crac.checkpointRestore()).isFalse();
+    assertThat(logTester.logs(Level.WARN)).contains("Property 'sonar.scanner.cracCheckpoint' is ignored: this Java runtime does not support CRaC");
+  }
+
+  @Test
+  void should_compare_connection_settings_from_properties_and_environment() {
+    var props = new Properties();
+    props.setProperty("sonar.host.url", "https://sonar.example.com");
+    props.setProperty("sonar.projectKey", "ignored");
+    var checkpoint = Crac.connectionSettings(props, Map.of());
+    assertThat(checkpoint).containsOnly(Map.entry("sonar.host.url", "https://sonar.example.com"));
+
+    var restored = Crac.connectionSettings(props, Map.of("SONAR_TOKEN", "token"));
+    assertThat(restored).containsEntry("sonar.token", "token").isNotEqualTo(checkpoint);
+
+    props.setProperty("sonar.token", "other");
+    assertThat(Crac.connectionSettings(props, Map.of("SONAR_TOKEN", "token"))).containsEntry("sonar.token", "other");
+  }
+}
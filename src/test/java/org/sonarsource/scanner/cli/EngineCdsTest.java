@@ -0,0 +1,178 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.event.Level;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EngineCdsTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  @TempDir
+  Path userHome;
+
+  @TempDir
+  Path jres;
+
+  private final Properties props = new Properties();
+  private final EngineTimings engineTimings = mock(EngineTimings.class);
+
+  @Test
+  void should_be_disabled_by_default() {
+    assertThat(EngineCds.isEnabled(props)).isFalse();
+    props.setProperty(EngineCds.ENGINE_CDS, "true");
+    assertThat(EngineCds.isEnabled(props)).isTrue();
+  }
+
+  @Test
+  void should_record_archive_on_first_run() throws IOException {
+    props.setProperty("sonar.userHome", userHome.toString());
+    props.setProperty("sonar.scanner.javaExePath", jre("21.0.2").resolve("bin/java").toString());
+    props.setProperty("sonar.scanner.javaOpts", "-Xmx1g");
+
+    var engineCds = EngineCds.configure(props, Map.of(), engineTimings);
+
+    assertThat(engineCds.mode()).isEqualTo(EngineCds.Mode.COLD);
+    assertThat(engineCds.archive().getParent()).isEqualTo(userHome.resolve("cds")).isDirectory();
+    assertThat(props.getProperty("sonar.scanner.javaOpts"))
+      .isEqualTo("-Xmx1g -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=" + engineCds.archive());
+  }
+
+  @Test
+  void should_keep_archive_in_temp_dir_if_user_home_contains_a_space() throws IOException {
+    props.setProperty("sonar.userHome", userHome.resolve("John Doe").resolve(".sonar").toString());
+    props.setProperty("sonar.scanner.javaExePath", jre("21").resolve("bin/java").toString());
+
+    var engineCds = EngineCds.configure(props, Map.of(), engineTimings);
+
+    assertThat(engineCds.archive().getParent())
+      .isEqualTo(Paths.get(System.getProperty("java.io.tmpdir")).toAbsolutePath().resolve("sonar-scanner-cds"))
+      .isDirectory();
+    assertThat(props.getProperty("sonar.scanner.javaOpts"))
+      .doesNotContain("John Doe")
+      .endsWith("-XX:SharedArchiveFile=" + engineCds.archive());
+  }
+
+  @Test
+  void should_reuse_existing_archive() throws Exception {
+    var env = Map.of("SONAR_USER_HOME", userHome.toString(), "JAVA_HOME", jre("21.0.2").toString());
+    props.setProperty("sonar.scanner.skipJreProvisioning", "true");
+    var archive = EngineCds.configure((Properties) props.clone(), env, engineTimings).archive();
+    Files.write(archive, new byte[] {1, 2, 3});
+    when(engineTimings.engineStartupMs()).thenReturn(1234L);
+
+    var engineCds = EngineCds.configure(props, env, engineTimings);
+
+    assertThat(engineCds.mode()).isEqualTo(EngineCds.Mode.WARM);
+    assertThat(props.getProperty("sonar.scanner.javaOpts")).endsWith("-XX:SharedArchiveFile=" + archive);
+    var json = engineCds.toJson();
+    assertThat(json.get("mode").getAsString()).isEqualTo("warm");
+    assertThat(json.get("archive").getAsString()).isEqualTo(archive.toString());
+    assertThat(json.get("engineStartupMs").getAsLong()).isEqualTo(1234L);
+  }
+
+  // the missing archive would disable the default CDS archive of the JRE
+  @Test
+  void should_be_disabled_before_java_19() throws IOException {
+    props.setProperty("sonar.userHome", userHome.toString());
+    props.setProperty("sonar.scanner.javaExePath", jre("17.0.9").resolve("bin/java").toString());
+
+    var engineCds = EngineCds.configure(props, Map.of(), engineTimings);
+
+    assertThat(engineCds.mode()).isEqualTo(EngineCds.Mode.DISABLED);
+    assertThat(engineCds.archive()).isNull();
+    assertThat(engineCds.toJson().get("mode").getAsString()).isEqualTo("disabled");
+    assertThat(props).doesNotContainKey("sonar.scanner.javaOpts");
+    assertThat(logTester.logs(Level.INFO))
+      .contains("Class data sharing of the scanner engine is disabled: it requires Java 19 or later, the scanner engine runs with Java 17.0.9");
+  }
+
+  @Test
+  void should_be_disabled_if_jre_is_provisioned_by_the_server() throws IOException {
+    props.setProperty("sonar.userHome", userHome.toString());
+
+    var engineCds = EngineCds.configure(props, Map.of("JAVA_HOME", jre("21").toString()), engineTimings);
+
+    assertThat(engineCds.mode()).isEqualTo(EngineCds.Mode.DISABLED);
+    assertThat(props).doesNotContainKey("sonar.scanner.javaOpts");
+  }
+
+  @Test
+  void should_use_one_archive_per_jre_and_cached_jars() throws IOException {
+    var cache = userHome.resolve("cache");
+    var jre = jre("21.0.2");
+    var key = EngineCds.key(jre, "21.0.2", EngineCds.cachedJars(cache));
+    assertThat(key).hasSize(16);
+    assertThat(EngineCds.key(jre, "21.0.3", EngineCds.cachedJars(cache))).isNotEqualTo(key);
+
+    Files.createDirectories(cache.resolve("0a1b/_tmp"));
+    Files.writeString(cache.resolve("0a1b/README.txt"), "");
+    assertThat(EngineCds.key(jre, "21.0.2", EngineCds.cachedJars(cache))).isEqualTo(key);
+
+    Files.createDirectories(cache.resolve("2c3d"));
+    Files.write(cache.resolve("2c3d/scanner-engine.jar"), new byte[0]);
+    Files.createDirectories(cache.resolve("4e5f"));
+    Files.write(cache.resolve("4e5f/sonar-java-plugin.jar"), new byte[0]);
+    assertThat(EngineCds.cachedJars(cache)).containsExactly("2c3d/scanner-engine.jar", "4e5f/sonar-java-plugin.jar");
+    var engineKey = EngineCds.key(jre, "21.0.2", EngineCds.cachedJars(cache));
+    assertThat(engineKey).isNotEqualTo(key);
+
+    // new version of a plugin
+    Files.createDirectories(cache.resolve("6a7b"));
+    Files.write(cache.resolve("6a7b/sonar-java-plugin.jar"), new byte[0]);
+    assertThat(EngineCds.key(jre, "21.0.2", EngineCds.cachedJars(cache))).isNotEqualTo(engineKey);
+  }
+
+  @Test
+  void should_read_feature_version() {
+    assertThat(EngineCds.featureVersion("1.8.0_392")).isEqualTo(8);
+    assertThat(EngineCds.featureVersion("17.0.9")).isEqualTo(17);
+    assertThat(EngineCds.featureVersion("19")).isEqualTo(19);
+    assertThat(EngineCds.featureVersion("22-ea")).isEqualTo(22);
+    assertThat(EngineCds.featureVersion("unknown")).isZero();
+  }
+
+  @Test
+  void should_not_read_version_of_jre_without_release_file() {
+    assertThat(EngineCds.javaVersion(jres)).isNull();
+  }
+
+  private Path jre(String version) throws IOException {
+    var home = Files.createDirectories(jres.resolve("jdk-" + version));
+    Files.createDirectories(home.resolve("bin"));
+    Files.writeString(home.resolve("release"), "IMPLEMENTOR=\"Eclipse Adoptium\"\nJAVA_VERSION=\"" + version + "\"\n");
+    return home;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.util.List;
+import java.util.Properties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class EngineTimingsTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  private final EngineTimings engineTimings = EngineTimings.install();
+  private final Logger engineLogger = LoggerFactory.getLogger("engine");
+
+  @AfterEach
+  void uninstall() {
+    engineTimings.uninstall();
+  }
+
+  @Test
+  void should_collect_timings_by_category() {
+    engineLogger.info("Sensor JavaScript analysis [javascript] (done) | time=1500ms");
+    engineLogger.info("Sensor JaCoCo XML Report Importer [jacoco] (done) | time=3ms");
+    engineLogger.info("Sensor JavaScript analysis [javascript] (done) | time=500ms");
+    engineLogger.info("Post-processor Issue tracking (done) | time=40ms");
+    engineLogger.info("Load quality profiles (done) | time=120ms");
+    engineLogger.info("Sensor JavaScript analysis [javascript]");
+    engineLogger.info("Some other message | time=12ms");
+
+    assertThat(engineTimings.timings(EngineTimings.Category.SENSOR))
+      .extracting(EngineTimings.Timing::name, EngineTimings.Timing::timeMs, EngineTimings.Timing::count)
+      .containsExactly(
+        tuple("Sensor JavaScript analysis [javascript]", 2000L, 2L),
+        tuple("Sensor JaCoCo XML Report Importer [jacoco]", 3L, 1L));
+    assertThat(engineTimings.timings(EngineTimings.Category.POST_PROCESSOR))
+      .extracting(EngineTimings.Timing::name)
+      .containsExactly("Post-processor Issue tracking");
+    assertThat(engineTimings.timings(EngineTimings.Category.PHASE))
+      .extracting(EngineTimings.Timing::name)
+      .containsExactly("Load quality profiles");
+
+    var json = engineTimings.toJson();
+    assertThat(json.getAsJsonArray("sensors")).hasSize(2);
+    assertThat(json.getAsJsonArray("sensors").get(0).getAsJsonObject().get("timeMs").getAsLong()).isEqualTo(2000L);
+    assertThat(json.getAsJsonArray("post-processors")).hasSize(1);
+    assertThat(json.getAsJsonArray("phases")).hasSize(1);
+  }
+
+  @Test
+  void should_measure_engine_startup() throws InterruptedException {
+    var phases = new Phases().addListener(engineTimings);
+    var launcherLogger = LoggerFactory.getLogger("org.sonarsource.scanner.lib.internal.facade.forked.ScannerEngineLauncher");
+    launcherLogger.info("Before the analysis");
+    assertThat(engineTimings.engineStartupMs()).isEqualTo(-1);
+
+    try (var phase = phases.start(Phases.ANALYSIS)) {
+      engineLogger.info("Not from the engine");
+      Thread.sleep(20);
+      launcherLogger.info("First log of the engine");
+      var startupMs = engineTimings.engineStartupMs();
+      assertThat(startupMs).isGreaterThanOrEqualTo(20L);
+      Thread.sleep(20);
+      launcherLogger.info("Second log of the engine");
+      assertThat(engineTimings.engineStartupMs()).isEqualTo(startupMs);
+    }
+  }
+
+  @Test
+  void should_log_slowest_timings_at_exit() {
+    for (int i = 1; i <= EngineTimings.TOP + 2; i++) {
+      engineLogger.info("Sensor S{} (done) | time={}ms", i, i * 1000);
+    }
+    engineLogger.info("Sensor S1 (done) | time=1000ms");
+    logTester.clear();
+
+    engineTimings.executionFinished(null, Exit.SUCCESS);
+
+    assertThat(logTester.logs()).containsExactly(
+      "Slowest sensors:",
+      "  7.000s Sensor S7",
+      "  6.000s Sensor S6",
+      "  5.000s Sensor S5",
+      "  4.000s Sensor S4",
+      "  3.000s Sensor S3");
+  }
+
+  @Test
+  void should_log_nothing_without_timings() {
+    engineTimings.executionFinished(null, Exit.SUCCESS);
+    assertThat(logTester.logs()).isEmpty();
+  }
+
+  @Test
+  void should_be_enabled_by_property_or_by_consumers() {
+    var props = new Properties();
+    assertThat(EngineTimings.isEnabled(props)).isFalse();
+
+    for (String key : List.of("sonar.scanner.engineTimings", "sonar.scanner.perfHistory", "sonar.scanner.engineCds")) {
+      var enabled = new Properties();
+      enabled.setProperty(key, "true");
+      assertThat(EngineTimings.isEnabled(enabled)).as(key).isTrue();
+    }
+    props.setProperty("sonar.scanner.summaryFile", "summary.json");
+    assertThat(EngineTimings.isEnabled(props)).isTrue();
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class FileListReferenceTest {
+
+  @TempDir
+  Path baseDir;
+
+  private final Properties props = new Properties();
+
+  @Test
+  void should_expand_references() throws Exception {
+    Files.writeString(baseDir.resolve("sources.txt"), "src/a.js\n\n  src/b.js  \nsrc/with,comma.js\nsrc/with\"quote.js\n");
+    Files.writeString(baseDir.resolve("tests.txt"), "test\n");
+    props.setProperty("sonar.projectBaseDir", baseDir.toString());
+    props.setProperty("sonar.sources", "@file:sources.txt");
+    props.setProperty("module.sonar.tests", "@file:" + baseDir.resolve("tests.txt"));
+    props.setProperty("sonar.exclusions", "**/*.txt");
+
+    FileListReference.expand(props);
+
+    assertThat(props)
+      .containsEntry("sonar.sources", "src/a.js,src/b.js,\"src/with,comma.js\",\"src/with\"\"quote.js\"")
+      .containsEntry("module.sonar.tests", "test")
+      .containsEntry("sonar.exclusions", "**/*.txt");
+  }
+
+  @Test
+  void should_fail_on_missing_file() {
+    props.setProperty("sonar.projectBaseDir", baseDir.toString());
+    props.setProperty("sonar.sources", "@file:missing.txt");
+
+    assertThatIllegalStateException().isThrownBy(() -> FileListReference.expand(props))
+      .withMessage("Unable to read the file list of property 'sonar.sources': " + baseDir.resolve("missing.txt"));
+  }
+
+  @Test
+  void should_detect_references() {
+    assertThat(FileListReference.isReference("@file:list.txt")).isTrue();
+    assertThat(FileListReference.isReference("src")).isFalse();
+    assertThat(FileListReference.isReference(null)).isFalse();
+    assertThat(FileListReference.path("@file:list.txt", baseDir)).isEqualTo(baseDir.resolve("list.txt"));
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FileSystemCacheTest {
+
+  @TempDir
+  Path temp;
+
+  private Path root;
+  private final FileSystemCache fs = new FileSystemCache();
+
+  @BeforeEach
+  void prepare() throws Exception {
+    root = temp.toRealPath();
+    Files.createDirectories(root.resolve("real/dir"));
+    Files.createFile(root.resolve("real/dir/file"));
+  }
+
+  @Test
+  void should_cache_file_attributes() throws Exception {
+    assertThat(fs.isDirectory(root.resolve("real/dir"))).isTrue();
+    assertThat(fs.isRegularFile(root.resolve("real/dir"))).isFalse();
+    assertThat(fs.isRegularFile(root.resolve("real/dir/file"))).isTrue();
+    assertThat(fs.isDirectory(root.resolve("missing"))).isFalse();
+    assertThat(fs.savedCalls()).isEqualTo(1);
+
+    Files.delete(root.resolve("real/dir/file"));
+    assertThat(fs.isRegularFile(root.resolve("real/dir/file"))).isTrue();
+    assertThat(fs.savedCalls()).isEqualTo(2);
+  }
+
+  @Test
+  void should_resolve_symlinks_like_the_file_system() throws Exception {
+    assumeTrue(SystemUtils.IS_OS_UNIX);
+    // the scenarios of misc/symlink-tester.sh
+    var abs = Files.createSymbolicLink(root.resolve("abs"), root.resolve("real/dir/file"));
+    var rel = Files.createSymbolicLink(root.resolve("rel"), Paths.get("real/dir/file"));
+    Files.createDirectories(root.resolve("x"));
+    var chain = Files.createSymbolicLink(root.resolve("x/chain"), Paths.get("../abs"));
+    var linkedDir = Files.createSymbolicLink(root.resolve("linkedDir"), Paths.get("real/dir"));
+
+    for (Path path : new Path[] {abs, rel, chain, linkedDir, linkedDir.resolve("file"), root.resolve("real/dir/../dir/file"), linkedDir.resolve("..")}) {
+      assertThat(fs.realPath(path)).as(path.toString()).isEqualTo(path.toRealPath());
+    }
+    assertThat(fs.isSameFile(chain, root.resolve("real/dir/file"))).isTrue();
+    assertThat(fs.isSameFile(linkedDir, root.resolve("real"))).isFalse();
+  }
+
+  @Test
+  void should_go_up_from_the_target_of_a_symlinked_directory() throws Exception {
+    assumeTrue(SystemUtils.IS_OS_UNIX);
+    Files.createSymbolicLink(root.resolve("linkedDir"), Paths.get("real/dir"));
+    Files.createFile(root.resolve("real/other"));
+    // lexically, linkedDir/../other would be this file
+    Files.createFile(root.resolve("other"));
+    var up = Files.createSymbolicLink(root.resolve("up"), Paths.get("linkedDir/../other"));
+
+    assertThat(fs.realPath(up)).isEqualTo(up.toRealPath()).isEqualTo(root.resolve("real/other"));
+    assertThat(fs.isSameFile(up, root.resolve("real/other"))).isEqualTo(Files.isSameFile(up, root.resolve("real/other"))).isTrue();
+    assertThat(fs.isSameFile(up, root.resolve("other"))).isFalse();
+  }
+
+  @Test
+  void should_reuse_resolution_of_parent_directories() throws Exception {
+    assumeTrue(SystemUtils.IS_OS_UNIX);
+    var linkedDir = Files.createSymbolicLink(root.resolve("linkedDir"), root.resolve("real/dir"));
+    Files.createDirectories(root.resolve("real/dir/a"));
+    Files.createDirectories(root.resolve("real/dir/b"));
+
+    fs.realPath(linkedDir.resolve("a"));
+    var saved = fs.savedCalls();
+    fs.realPath(linkedDir.resolve("b"));
+
+    assertThat(fs.savedCalls()).isGreaterThan(saved);
+    assertThat(fs.realPath(linkedDir.resolve("b"))).isEqualTo(root.resolve("real/dir/b"));
+  }
+
+  @Test
+  void should_fail_on_missing_file_or_symlink_loop() throws Exception {
+    assertThatThrownBy(() -> fs.realPath(root.resolve("real/missing"))).isInstanceOf(NoSuchFileException.class);
+
+    assumeTrue(SystemUtils.IS_OS_UNIX);
+    Files.createSymbolicLink(root.resolve("loop1"), Paths.get("loop2"));
+    Files.createSymbolicLink(root.resolve("loop2"), Paths.get("loop1"));
+    assertThatThrownBy(() -> fs.realPath(root.resolve("loop1")))
+      .isInstanceOf(FileSystemException.class)
+      .hasMessageContaining("Too many levels of symbolic links");
+    Files.createSymbolicLink(root.resolve("dangling"), Paths.get("real/missing"));
+    assertThatThrownBy(() -> fs.realPath(root.resolve("dangling"))).isInstanceOf(NoSuchFileException.class);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.net.http.HttpClient;
+import java.util.List;
+import java.util.Properties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.event.Level;
+import org.sonarsource.scanner.lib.ScannerProperties;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpTransportTest {
+
+  private static final List<String> JDK_PROPERTIES = List.of("jdk.httpclient.connectionPoolSize", "jdk.httpclient.keepalive.timeout",
+    "jdk.httpclient.keepalive.timeout.h2", "jdk.httpclient.receiveBufferSize", "jdk.httpclient.sendBufferSize");
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  private final Properties props = new Properties();
+
+  @AfterEach
+  void tearDown() {
+    JDK_PROPERTIES.forEach(System::clearProperty);
+  }
+
+  @Test
+  void should_be_enabled_by_any_transport_setting() {
+    assertThat(HttpTransport.isEnabled(props)).isFalse();
+    props.setProperty(HttpTransport.SEND_BUFFER_SIZE, "65536");
+    assertThat(HttpTransport.isEnabled(props)).isTrue();
+  }
+
+  @Test
+  void should_map_settings_to_jdk_http_client_properties() {
+    props.setProperty(HttpTransport.CONNECTION_POOL_SIZE, "8");
+    props.setProperty(HttpTransport.KEEP_ALIVE_TIMEOUT, " 120 ");
+    props.setProperty(HttpTransport.RECEIVE_BUFFER_SIZE, "262144");
+    props.setProperty(HttpTransport.SEND_BUFFER_SIZE, "131072");
+    props.setProperty(ScannerProperties.SCANNER_JAVA_OPTS, "-Xmx1g");
+
+    HttpTransport.configure(props);
+
+    assertThat(System.getProperty("jdk.httpclient.connectionPoolSize")).isEqualTo("8");
+    assertThat(System.getProperty("jdk.httpclient.keepalive.timeout")).isEqualTo("120");
+    assertThat(System.getProperty("jdk.httpclient.keepalive.timeout.h2")).isEqualTo("120");
+    assertThat(System.getProperty("jdk.httpclient.receiveBufferSize")).isEqualTo("262144");
+    assertThat(System.getProperty("jdk.httpclient.sendBufferSize")).isEqualTo("131072");
+    assertThat(props.getProperty(ScannerProperties.SCANNER_JAVA_OPTS)).isEqualTo("-Xmx1g -Djdk.httpclient.connectionPoolSize=8 "
+      + "-Djdk.httpclient.keepalive.timeout=120 -Djdk.httpclient.keepalive.timeout.h2=120 -Djdk.httpclient.receiveBufferSize=262144 "
+      + "-Djdk.httpclient.sendBufferSize=131072");
+  }
+
+  @Test
+  void should_not_override_jdk_properties_set_on_the_command_line() {
+    System.setProperty("jdk.httpclient.connectionPoolSize", "2");
+    props.setProperty(HttpTransport.CONNECTION_POOL_SIZE, "8");
+
+    HttpTransport.configure(props);
+
+    assertThat(System.getProperty("jdk.httpclient.connectionPoolSize")).isEqualTo("2");
+    assertThat(props.getProperty(ScannerProperties.SCANNER_JAVA_OPTS)).isEqualTo("-Djdk.httpclient.connectionPoolSize=2");
+  }
+
+  @Test
+  void should_apply_new_values_when_configured_again() {
+    props.setProperty(HttpTransport.CONNECTION_POOL_SIZE, "8");
+    HttpTransport.configure(props);
+
+    var restored = new Properties();
+    restored.setProperty(HttpTransport.CONNECTION_POOL_SIZE, "16");
+    HttpTransport.configure(restored);
+
+    assertThat(System.getProperty("jdk.httpclient.connectionPoolSize")).isEqualTo("16");
+    assertThat(restored.getProperty(ScannerProperties.SCANNER_JAVA_OPTS)).isEqualTo("-Djdk.httpclient.connectionPoolSize=16");
+  }
+
+  @Test
+  void should_ignore_invalid_values() {
+    props.setProperty(HttpTransport.CONNECTION_POOL_SIZE, "many");
+    props.setProperty(HttpTransport.KEEP_ALIVE_TIMEOUT, "-1");
+
+    HttpTransport.configure(props);
+
+    assertThat(System.getProperty("jdk.httpclient.connectionPoolSize")).isNull();
+    assertThat(System.getProperty("jdk.httpclient.keepalive.timeout")).isNull();
+    assertThat(props).doesNotContainKey(ScannerProperties.SCANNER_JAVA_OPTS);
+    assertThat(logTester.logs(Level.WARN)).containsExactly(
+      "Invalid value for 'sonar.scanner.http.connectionPoolSize', expected a non-negative number: many",
+      "Invalid value for 'sonar.scanner.http.keepAliveTimeout', expected a non-negative number: -1");
+  }
+
+  @Test
+  void should_prefer_http2_unless_disabled() {
+    assertThat(HttpTransport.newClientBuilder(null).build().version()).isEqualTo(HttpClient.Version.HTTP_2);
+    assertThat(HttpTransport.newClientBuilder(props).build().version()).isEqualTo(HttpClient.Version.HTTP_2);
+    props.setProperty(HttpTransport.HTTP2, "false");
+    assertThat(HttpTransport.newClientBuilder(props).build().version()).isEqualTo(HttpClient.Version.HTTP_1_1);
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.event.Level;
+import testutils.LogTester;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LifecycleDispatcherTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void should_deliver_events_in_order() {
+    var listener = new RecordingListener();
+    var dispatcher = new LifecycleDispatcher(List.of(listener));
+    var phases = new Phases().addListener(dispatcher);
+    try (var configuration = phases.start(Phases.CONFIGURATION)) {
+      phases.start(Phases.PROPERTY_RESOLUTION).close();
+    }
+    phases.start(Phases.BOOTSTRAP).close();
+    var props = new Properties();
+    props.setProperty("sonar.projectBaseDir", "/root");
+    props.setProperty("module1.sonar.projectBaseDir", "/root/module1");
+    props.setProperty("module1.module2.sonar.projectBaseDir", "/root/module1/module2");
+
+    dispatcher.configurationLoaded(props);
+    dispatcher.bootstrapFinished(true);
+    dispatcher.analysisStarted();
+    dispatcher.analysisFailed(new IllegalStateException("boom"));
+    dispatcher.executionFinished(props, Exit.INTERNAL_ERROR);
+
+    assertThat(listener.events).containsExactly(
+      "configurationLoaded [configuration, property-resolution] 2",
+      "bootstrapFinished true",
+      "analysisStarted",
+      "analysisFailed boom",
+      "analysisFinished 1");
+    assertThat(listener.resourceUsage.peakHeapBytes()).isPositive();
+    assertThat(listener.resourceUsage.gcTime().isNegative()).isFalse();
+  }
+
+  @Test
+  void should_not_wait_for_slow_listeners() {
+    var release = new CountDownLatch(1);
+    var slowListener = new ScannerLifecycleListener() {
+      @Override
+      public void analysisStarted() {
+        await(release);
+      }
+    };
+    var listener = new RecordingListener();
+    var dispatcher = new LifecycleDispatcher(List.of(slowListener, listener));
+
+    long start = System.nanoTime();
+    dispatcher.analysisStarted();
+    dispatcher.bootstrapFinished(true);
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+    assertThat(listener.events).isEmpty();
+
+    release.countDown();
+    dispatcher.executionFinished(null, Exit.SUCCESS);
+    assertThat(listener.events).containsExactly("analysisStarted", "bootstrapFinished true", "analysisFinished 0");
+  }
+
+  @Test
+  void should_drop_events_when_the_queue_is_full() {
+    var release = new CountDownLatch(1);
+    var started = new CountDownLatch(1);
+    var slowListener = new ScannerLifecycleListener() {
+      @Override
+      public void analysisStarted() {
+        started.countDown();
+        await(release);
+      }
+    };
+    var listener = new RecordingListener();
+    var dispatcher = new LifecycleDispatcher(List.of(slowListener, listener), 1);
+
+    dispatcher.analysisStarted();
+    await(started);
+    dispatcher.bootstrapFinished(true);
+    dispatcher.bootstrapFinished(false);
+    dispatcher.analysisFailed(new IllegalStateException("boom"));
+    release.countDown();
+    // let the queue drain, so that the last event is not dropped
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (listener.events.size() < 2 && System.nanoTime() < deadline) {
+      Thread.onSpinWait();
+    }
+    dispatcher.executionFinished(null, Exit.SUCCESS);
+
+    assertThat(listener.events).containsExactly("analysisStarted", "bootstrapFinished true", "analysisFinished 0");
+    assertThat(logTester.logs(Level.WARN)).contains("2 lifecycle events were dropped because listeners were too slow");
+  }
+
+  @Test
+  void should_isolate_failing_listeners() {
+    var failingListener = new ScannerLifecycleListener() {
+      @Override
+      public void analysisStarted() {
+        throw new IllegalStateException("boom");
+      }
+    };
+    var listener = new RecordingListener();
+    var dispatcher = new LifecycleDispatcher(List.of(failingListener, listener));
+
+    dispatcher.analysisStarted();
+    dispatcher.executionFinished(null, Exit.SUCCESS);
+
+    assertThat(listener.events).containsExactly("analysisStarted", "analysisFinished 0");
+    assertThat(logTester.logs(Level.WARN)).anyMatch(log -> log.startsWith("Lifecycle listener ") && log.endsWith(" failed"));
+  }
+
+  @Test
+  void should_do_nothing_without_listeners() {
+    var dispatcher = LifecycleDispatcher.load(null);
+
+    assertThat(dispatcher.hasListeners()).isFalse();
+    dispatcher.configurationLoaded(new Properties());
+    dispatcher.analysisStarted();
+    dispatcher.executionFinished(null, Exit.SUCCESS);
+    assertThat(logTester.logs(Level.WARN)).isEmpty();
+  }
+
+  @Test
+  void should_load_listeners_from_the_extensions_directory() throws IOException {
+    var extensions = Files.createDirectories(temp.resolve(LifecycleDispatcher.EXTENSIONS_DIR));
+    try (var jar = new JarOutputStream(Files.newOutputStream(extensions.resolve("listener.jar")))) {
+      jar.putNextEntry(new ZipEntry("META-INF/services/" + ScannerLifecycleListener.class.getName()));
+      jar.write((StaticRecordingListener.class.getName() + "\n").getBytes(UTF_8));
+      jar.closeEntry();
+    }
+    Files.writeString(extensions.resolve("README.txt"), "not a jar");
+
+    var dispatcher = LifecycleDispatcher.load(temp.toString());
+    StaticRecordingListener.events.clear();
+    dispatcher.analysisStarted();
+    dispatcher.executionFinished(null, Exit.SUCCESS);
+
+    assertThat(StaticRecordingListener.events).containsExactly("analysisStarted");
+  }
+
+  @Test
+  void should_warn_when_a_listener_cannot_be_loaded() throws IOException {
+    var extensions = Files.createDirectories(temp.resolve(LifecycleDispatcher.EXTENSIONS_DIR));
+    try (var jar = new JarOutputStream(Files.newOutputStream(extensions.resolve("listener.jar")))) {
+      jar.putNextEntry(new ZipEntry("META-INF/services/" + ScannerLifecycleListener.class.getName()));
+      jar.write("org.example.MissingListener\n".getBytes(UTF_8));
+      jar.closeEntry();
+    }
+
+    var dispatcher = LifecycleDispatcher.load(temp.toString());
+
+    assertThat(dispatcher.hasListeners()).isFalse();
+    assertThat(logTester.logs(Level.WARN)).contains("Unable to load a lifecycle listener");
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class RecordingListener implements ScannerLifecycleListener {
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private ResourceUsage resourceUsage;
+
+    @Override
+    public void configurationLoaded(Map<String, Duration> timings, int moduleCount) {
+      events.add("configurationLoaded " + timings.keySet() + " " + moduleCount);
+    }
+
+    @Override
+    public void bootstrapFinished(boolean successful, Duration duration) {
+      events.add("bootstrapFinished " + successful);
+    }
+
+    @Override
+    public void analysisStarted() {
+      events.add("analysisStarted");
+    }
+
+    @Override
+    public void analysisFinished(int exitStatus, Duration duration, ResourceUsage resourceUsage) {
+      this.resourceUsage = resourceUsage;
+      events.add("analysisFinished " + exitStatus);
+    }
+
+    @Override
+    public void analysisFailed(Throwable error) {
+      events.add("analysisFailed " + error.getMessage());
+    }
+  }
+
+  public static class StaticRecordingListener implements ScannerLifecycleListener {
+    static final List<String> events = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void analysisStarted() {
+      events.add("analysisStarted");
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.filter.LevelFilter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.spi.FilterReply;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import testutils.LogTester;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class LogAppendersTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  @TempDir
+  Path temp;
+
+  private final Properties props = new Properties();
+
+  @Test
+  void should_be_disabled_by_default() {
+    assertThat(LogAppenders.isEnabled(props)).isFalse();
+    props.setProperty("sonar.log.async", "true");
+    assertThat(LogAppenders.isEnabled(props)).isTrue();
+    props.clear();
+    props.setProperty("sonar.log.file", "scanner.log");
+    assertThat(LogAppenders.isEnabled(props)).isTrue();
+  }
+
+  @Test
+  void should_write_logs_to_file() throws Exception {
+    logTester.setLevel(org.slf4j.event.Level.DEBUG);
+    var file = temp.resolve("scanner.log");
+    props.setProperty("sonar.log.file", file.toString());
+    props.setProperty("sonar.log.async", "true");
+
+    var appenders = LogAppenders.configure(props);
+    var logger = LoggerFactory.getLogger(getClass());
+    logger.debug("some details");
+    logger.info("some information");
+    appenders.executionFinished(props, Exit.SUCCESS);
+
+    assertThat(Files.readAllLines(file, UTF_8))
+      .anyMatch(l -> l.endsWith("DEBUG some details"))
+      .anyMatch(l -> l.endsWith("INFO  some information"));
+    assertThat(appenders.droppedEvents()).isZero();
+    assertThat(logTester.logs()).contains("some details", "some information");
+  }
+
+  @Test
+  void should_only_send_info_and_above_to_console_when_writing_to_file() {
+    var context = (LoggerContext) LoggerFactory.getILoggerFactory();
+    var rootLogger = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+    // like the filters of an XML configuration, accepting an event bypasses the next filters
+    var levelFilter = new LevelFilter();
+    levelFilter.setContext(context);
+    levelFilter.setLevel(Level.DEBUG);
+    levelFilter.setOnMatch(FilterReply.ACCEPT);
+    levelFilter.start();
+    var console = new ConsoleAppender<ILoggingEvent>();
+    console.setContext(context);
+    console.setName("TEST_CONSOLE");
+    console.addFilter(levelFilter);
+    rootLogger.addAppender(console);
+    props.setProperty("sonar.log.file", temp.resolve("scanner.log").toString());
+
+    try {
+      var appenders = LogAppenders.configure(props);
+      assertThat(console.getFilterChainDecision(event(rootLogger, Level.DEBUG))).isEqualTo(FilterReply.DENY);
+      assertThat(console.getFilterChainDecision(event(rootLogger, Level.INFO))).isNotEqualTo(FilterReply.DENY);
+
+      appenders.executionFinished(props, Exit.SUCCESS);
+      assertThat(console.getCopyOfAttachedFiltersList()).containsExactly(levelFilter);
+      assertThat(console.getFilterChainDecision(event(rootLogger, Level.DEBUG))).isEqualTo(FilterReply.ACCEPT);
+    } finally {
+      rootLogger.detachAppender(console);
+    }
+  }
+
+  private static LoggingEvent event(ch.qos.logback.classic.Logger logger, Level level) {
+    return new LoggingEvent(LogAppendersTest.class.getName(), logger, level, "message", null, null);
+  }
+
+  @Test
+  void should_stop_previous_appenders_when_configured_again() throws Exception {
+    var first = temp.resolve("first.log");
+    var second = temp.resolve("second.log");
+    var logger = LoggerFactory.getLogger(getClass());
+    props.setProperty("sonar.log.file", first.toString());
+    props.setProperty("sonar.log.async", "true");
+    LogAppenders.configure(props);
+    logger.info("first message");
+
+    props.setProperty("sonar.log.file", second.toString());
+    var appenders = LogAppenders.configure(props);
+    logger.info("second message");
+    appenders.executionFinished(props, Exit.SUCCESS);
+
+    assertThat(Files.readString(first, UTF_8)).contains("first message").doesNotContain("second message");
+    assertThat(Files.readString(second, UTF_8)).contains("second message").doesNotContain("first message");
+  }
+
+  @Test
+  void should_rotate_and_compress_log_file() throws Exception {
+    var file = temp.resolve("scanner.log");
+    props.setProperty("sonar.log.file", file.toString());
+    props.setProperty("sonar.log.fileMaxSize", "1KB");
+    props.setProperty("sonar.log.fileMaxHistory", "2");
+
+    var appenders = LogAppenders.configure(props);
+    var logger = LoggerFactory.getLogger(getClass());
+    for (int i = 0; i < 2000; i++) {
+      logger.info("line {} of a log file that will need to be rotated", i);
+      if (i % 500 == 0) {
+        Thread.sleep(LogAppenders.SIZE_CHECK_INCREMENT_MS + 100L);
+      }
+    }
+    appenders.executionFinished(props, Exit.SUCCESS);
+
+    assertThat(file).exists();
+    assertThat(temp.resolve("scanner.log.1.gz")).exists();
+    assertThat(temp.resolve("scanner.log.3.gz")).doesNotExist();
+  }
+
+  @Test
+  void should_drop_debug_events_when_queue_is_full() throws Exception {
+    var context = (LoggerContext) LoggerFactory.getILoggerFactory();
+    var blocked = new CountDownLatch(1);
+    var received = new CopyOnWriteArrayList<ILoggingEvent>();
+    var slowAppender = new AppenderBase<ILoggingEvent>() {
+      @Override
+      protected void append(ILoggingEvent event) {
+        try {
+          blocked.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        received.add(event);
+      }
+    };
+    slowAppender.setContext(context);
+    slowAppender.start();
+
+    var async = new LogAppenders.DroppingAsyncAppender(LogAppenders.Overflow.DROP);
+    async.setContext(context);
+    async.setQueueSize(10);
+    async.addAppender(slowAppender);
+    async.start();
+
+    var logger = context.getLogger(getClass());
+    for (int i = 0; i < 20; i++) {
+      async.doAppend(new LoggingEvent(getClass().getName(), logger, Level.DEBUG, "debug " + i, null, null));
+    }
+    async.doAppend(new LoggingEvent(getClass().getName(), logger, Level.WARN, "warning", null, null));
+    blocked.countDown();
+    async.stop();
+
+    assertThat(async.dropped()).isPositive();
+    assertThat(received).hasSize(21 - (int) async.dropped());
+    assertThat(received).extracting(ILoggingEvent::getMessage).contains("warning");
+  }
+
+  @Test
+  void should_not_report_when_no_event_was_dropped() {
+    props.setProperty("sonar.log.async", "true");
+    props.setProperty("sonar.log.asyncOverflow", "drop");
+    var appenders = LogAppenders.configure(props);
+    appenders.executionFinished(props, Exit.SUCCESS);
+    assertThat(appenders.droppedEvents()).isZero();
+    assertThat(logTester.logs()).noneMatch(l -> l.contains("were dropped"));
+  }
+
+  @Test
+  void should_fail_on_invalid_overflow_policy() {
+    props.setProperty("sonar.log.async", "true");
+    props.setProperty("sonar.log.asyncOverflow", "wait");
+    assertThatIllegalArgumentException().isThrownBy(() -> LogAppenders.configure(props))
+      .withMessage("Invalid value for property sonar.log.asyncOverflow: wait (expected 'block' or 'drop')");
+  }
+
+  @Test
+  void should_fail_on_invalid_queue_size() {
+    props.setProperty("sonar.log.async", "true");
+    props.setProperty("sonar.log.asyncQueueSize", "big");
+    assertThatIllegalArgumentException().isThrownBy(() -> LogAppenders.configure(props))
+      .withMessage("Invalid value for property sonar.log.asyncQueueSize: big");
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import java.util.Properties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.LoggerFactory;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.entry;
+
+class LogLevelsTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  private final LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+  @AfterEach
+  void resetLevels() {
+    context.getLogger("org.foo").setLevel(null);
+    context.getLogger("org.foo.bar").setLevel(null);
+  }
+
+  @Test
+  void should_parse_levels() {
+    assertThat(LogLevels.parse(" org.foo = debug , org.foo.bar=TRACE,")).containsExactly(
+      entry("org.foo", Level.DEBUG),
+      entry("org.foo.bar", Level.TRACE));
+    assertThat(LogLevels.parse("")).isEmpty();
+  }
+
+  @Test
+  void should_fail_on_invalid_entry() {
+    assertThatIllegalArgumentException().isThrownBy(() -> LogLevels.parse("org.foo=VERBOSE"))
+      .withMessage("Invalid value for property sonar.log.levels: 'org.foo=VERBOSE' (expected <logger or package name>=<TRACE|DEBUG|INFO|WARN|ERROR|OFF>)");
+    assertThatIllegalArgumentException().isThrownBy(() -> LogLevels.parse("DEBUG"));
+    assertThatIllegalArgumentException().isThrownBy(() -> LogLevels.parse("=DEBUG"));
+  }
+
+  @Test
+  void should_enable_debug_for_selected_loggers_only() {
+    var props = new Properties();
+    props.setProperty("sonar.log.levels", "org.foo=DEBUG,org.foo.bar=WARN");
+    LogLevels.apply(props);
+
+    LoggerFactory.getLogger("org.foo.Sensor").debug("sensor details");
+    LoggerFactory.getLogger("org.foo.bar.Noisy").info("noisy information");
+    LoggerFactory.getLogger("org.other.Sensor").debug("other details");
+
+    assertThat(logTester.logs()).containsExactly("sensor details");
+  }
+}
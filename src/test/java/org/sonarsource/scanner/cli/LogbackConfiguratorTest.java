@@ -0,0 +1,100 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import ch.qos.logback.classic.ClassicConstants;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.Configurator.ExecutionStatus;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogbackConfiguratorTest {
+
+  private final LoggerContext context = new LoggerContext();
+  private final LogbackConfigurator configurator = new LogbackConfigurator();
+
+  @AfterEach
+  void tearDown() {
+    System.clearProperty(ClassicConstants.CONFIG_FILE_PROPERTY);
+    context.stop();
+  }
+
+  @Test
+  void should_configure_console_appenders() {
+    configurator.setContext(context);
+
+    assertThat(configurator.configure(context)).isEqualTo(ExecutionStatus.DO_NOT_INVOKE_NEXT_IF_ANY);
+
+    var rootLogger = context.getLogger(Logger.ROOT_LOGGER_NAME);
+    assertThat(rootLogger.getLevel()).isEqualTo(Level.INFO);
+    var stdout = (ConsoleAppender<ILoggingEvent>) rootLogger.getAppender(LogbackConfigurator.STDOUT);
+    var stderr = (ConsoleAppender<ILoggingEvent>) rootLogger.getAppender(LogbackConfigurator.STDERR);
+    assertThat(stdout.getTarget()).isEqualTo("System.out");
+    assertThat(stdout.isStarted()).isTrue();
+    assertThat(stderr.getTarget()).isEqualTo("System.err");
+    assertThat(stderr.isStarted()).isTrue();
+  }
+
+  @Test
+  void should_split_events_between_stdout_and_stderr() {
+    configurator.configure(context);
+    var rootLogger = context.getLogger(Logger.ROOT_LOGGER_NAME);
+    var stdout = rootLogger.getAppender(LogbackConfigurator.STDOUT);
+    var stderr = rootLogger.getAppender(LogbackConfigurator.STDERR);
+
+    for (Level level : new Level[] {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN}) {
+      assertThat(decide(stdout, level)).isEqualTo(FilterReply.NEUTRAL);
+      assertThat(decide(stderr, level)).isEqualTo(FilterReply.DENY);
+    }
+    assertThat(decide(stdout, Level.ERROR)).isEqualTo(FilterReply.DENY);
+    assertThat(decide(stderr, Level.ERROR)).isEqualTo(FilterReply.NEUTRAL);
+  }
+
+  @Test
+  void should_let_logback_load_the_xml_configuration_file_when_set() {
+    System.setProperty(ClassicConstants.CONFIG_FILE_PROPERTY, "custom-logback.xml");
+
+    assertThat(configurator.configure(context)).isEqualTo(ExecutionStatus.INVOKE_NEXT_IF_ANY);
+    assertThat(context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders().hasNext()).isFalse();
+  }
+
+  @Test
+  void should_be_used_by_logback() {
+    var rootLogger = (ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+
+    assertThat(rootLogger.getAppender(LogbackConfigurator.STDOUT)).isInstanceOf(ConsoleAppender.class);
+    assertThat(rootLogger.getAppender(LogbackConfigurator.STDERR)).isInstanceOf(ConsoleAppender.class);
+  }
+
+  private FilterReply decide(Appender<ILoggingEvent> appender, Level level) {
+    var event = new LoggingEvent();
+    event.setLevel(level);
+    return appender.getFilterChainDecision(event);
+  }
+}
@@ -19,11 +19,14 @@
  */
 package org.sonarsource.scanner.cli;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.Properties;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mockito;
@@ -37,6 +40,8 @@ import org.sonarsource.scanner.lib.ScannerProperties;
 import testutils.LogTester;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -82,6 +87,46 @@ class MainTest {
     verify(engine, times(1)).analyze((Map) properties);
   }
 
+  @Test
+  void should_notify_lifecycle_listeners() {
+    when(cli.getInvokedFrom()).thenReturn("");
+    LifecycleDispatcher lifecycle = mock();
+    Main main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory, new Phases(), lifecycle);
+    main.analyze();
+
+    InOrder inOrder = Mockito.inOrder(lifecycle, engine, exit);
+    inOrder.verify(lifecycle).configurationLoaded(properties);
+    inOrder.verify(lifecycle).bootstrapFinished(true);
+    inOrder.verify(lifecycle).analysisStarted();
+    inOrder.verify(engine).analyze(any());
+    inOrder.verify(lifecycle).executionFinished(properties, Exit.SUCCESS);
+    inOrder.verify(exit).exit(Exit.SUCCESS);
+    verify(lifecycle, never()).analysisFailed(any());
+  }
+
+  @Test
+  void should_notify_lifecycle_listeners_of_failures() {
+    var e = new IllegalStateException("Error");
+    doThrow(e).when(engine).analyze(any());
+    when(cli.getInvokedFrom()).thenReturn("");
+    LifecycleDispatcher lifecycle = mock();
+    Main main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory, new Phases(), lifecycle);
+    main.analyze();
+
+    verify(lifecycle).analysisFailed(e);
+    verify(lifecycle).executionFinished(properties, Exit.INTERNAL_ERROR);
+  }
+
+  @Test
+  void should_analyze_without_checkpoint_when_crac_is_not_supported() {
+    assumeFalse(Crac.isSupported());
+    var analysisProps = execute("sonar.scanner.cracCheckpoint", "true");
+
+    assertThat(analysisProps).containsEntry("sonar.scanner.cracCheckpoint", "true");
+    verify(conf, times(1)).properties();
+    verify(exit).exit(Exit.SUCCESS);
+  }
+
   @Test
   void should_exit_with_error_on_exception_during_analysis() {
     Exception e = new NullPointerException("NPE");
@@ -225,6 +270,37 @@ class MainTest {
     inOrder.verify(exit, times(1)).exit(Exit.SUCCESS);
   }
 
+  @Test
+  void should_configure_properties_read_again_after_restore(@TempDir Path baseDir) {
+    var restored = new Properties();
+    restored.setProperty("sonar.projectBaseDir", baseDir.toString());
+    restored.setProperty(HttpTransport.SEND_BUFFER_SIZE, "65536");
+    when(conf.properties()).thenReturn(restored);
+    var phases = new Phases();
+
+    try {
+      var p = new Main(exit, cli, conf, scannerEngineBootstrapperFactory, phases).restoredProperties(new Stats());
+
+      assertThat(p).isSameAs(restored);
+      assertThat(p.getProperty("sonar.scanner.javaOpts")).isEqualTo("-Djdk.httpclient.sendBufferSize=65536");
+    } finally {
+      phases.executionFinished(restored, Exit.SUCCESS);
+      System.clearProperty("jdk.httpclient.sendBufferSize");
+    }
+  }
+
+  @Test
+  void should_check_properties_read_again_after_restore(@TempDir Path baseDir) {
+    var restored = new Properties();
+    restored.setProperty("sonar.projectBaseDir", baseDir.toString());
+    restored.setProperty(Preflight.PREFLIGHT, "true");
+    restored.setProperty("sonar.sources", "missing");
+    when(conf.properties()).thenReturn(restored);
+    var main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory);
+
+    assertThatThrownBy(() -> main.restoredProperties(new Stats())).isInstanceOf(Preflight.PreflightException.class);
+  }
+
   @Test
   void should_skip() {
     Properties p = new Properties();
@@ -236,10 +312,173 @@ class MainTest {
     main.analyze();
 
     assertThat(logTester.logs(Level.INFO)).contains("SonarScanner CLI analysis skipped");
-    InOrder inOrder = Mockito.inOrder(exit, scannerEngineBootstrapperFactory);
+    verify(exit, times(1)).exit(Exit.SUCCESS);
+    verify(scannerEngineBootstrapperFactory, never()).create(any(), any());
+  }
 
-    inOrder.verify(exit, times(1)).exit(Exit.SUCCESS);
-    inOrder.verify(scannerEngineBootstrapperFactory, times(1)).create(p, "");
+  @Test
+  void should_write_run_summary_with_configuration_time_if_skipped(@TempDir Path baseDir) throws Exception {
+    var summaryFile = baseDir.resolve("summary.json");
+    Properties p = new Properties();
+    p.setProperty(ScannerProperties.SKIP, "true");
+    p.setProperty("sonar.scanner.summaryFile", summaryFile.toString());
+    when(conf.properties()).thenReturn(p);
+    when(cli.getInvokedFrom()).thenReturn("");
+
+    Main main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory);
+    main.analyze();
+
+    verify(exit).exit(Exit.SUCCESS);
+    assertThat(Files.readString(summaryFile)).contains("\"exitStatus\": 0");
+  }
+
+  @Test
+  void should_record_profile_in_working_directory(@TempDir Path baseDir) {
+    Properties p = new Properties();
+    p.setProperty("sonar.projectBaseDir", baseDir.toString());
+    when(conf.properties()).thenReturn(p);
+    when(cli.getInvokedFrom()).thenReturn("");
+    when(cli.isProfilingEnabled()).thenReturn(true);
+
+    Main main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory);
+    main.analyze();
+
+    verify(exit).exit(Exit.SUCCESS);
+    assertThat(baseDir.resolve(".scannerwork/scanner-profile.jfr")).isRegularFile();
+    assertThat(p.getProperty("sonar.scanner.javaOpts")).contains("-XX:StartFlightRecording=");
+  }
+
+  @Test
+  void should_write_run_summary_with_engine_timings(@TempDir Path baseDir) throws Exception {
+    var summaryFile = baseDir.resolve("summary.json");
+    Properties p = new Properties();
+    p.setProperty("sonar.scanner.summaryFile", summaryFile.toString());
+    when(conf.properties()).thenReturn(p);
+    when(cli.getInvokedFrom()).thenReturn("");
+    when(engine.analyze(any())).then(invocation -> {
+      LoggerFactory.getLogger("engine").info("Sensor JavaScript analysis [javascript] (done) | time=1234ms");
+      return true;
+    });
+
+    Main main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory);
+    main.analyze();
+
+    verify(exit).exit(Exit.SUCCESS);
+    assertThat(logTester.logs()).contains("Slowest sensors:", "  1.234s Sensor JavaScript analysis [javascript]");
+    assertThat(Files.readString(summaryFile))
+      .contains("\"exitStatus\": 0")
+      .contains("\"name\": \"Sensor JavaScript analysis [javascript]\"")
+      .contains("\"name\": \"" + Phases.ANALYSIS + "\"");
+  }
+
+  @Test
+  void should_log_engine_timings_only_if_enabled() {
+    Properties p = new Properties();
+    when(conf.properties()).thenReturn(p);
+    when(cli.getInvokedFrom()).thenReturn("");
+    when(engine.analyze(any())).then(invocation -> {
+      LoggerFactory.getLogger("engine").info("Sensor JavaScript analysis [javascript] (done) | time=1234ms");
+      return true;
+    });
+
+    new Main(exit, cli, conf, scannerEngineBootstrapperFactory).analyze();
+    assertThat(logTester.logs()).doesNotContain("Slowest sensors:");
+
+    p.setProperty("sonar.scanner.engineTimings", "true");
+    new Main(exit, cli, conf, scannerEngineBootstrapperFactory).analyze();
+    assertThat(logTester.logs()).contains("Slowest sensors:", "  1.234s Sensor JavaScript analysis [javascript]");
+  }
+
+  @Test
+  void should_record_performance_history(@TempDir Path userHome) throws Exception {
+    Properties p = new Properties();
+    p.setProperty("sonar.projectKey", "my-project");
+    p.setProperty("sonar.userHome", userHome.toString());
+    p.setProperty("sonar.scanner.perfHistory", "true");
+    when(conf.properties()).thenReturn(p);
+    when(cli.getInvokedFrom()).thenReturn("");
+
+    Main main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory);
+    main.analyze();
+
+    verify(exit).exit(Exit.SUCCESS);
+    assertThat(Files.readAllLines(userHome.resolve("perf-history/my-project.jsonl"))).hasSize(1);
+  }
+
+  @Test
+  void should_only_display_perf_report(@TempDir Path userHome) {
+    Properties p = new Properties();
+    p.setProperty("sonar.projectKey", "my-project");
+    p.setProperty("sonar.userHome", userHome.toString());
+    when(conf.properties()).thenReturn(p);
+    when(cli.isPerfReportOnly()).thenReturn(true);
+
+    Main main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory);
+    main.analyze();
+
+    verify(exit).exit(Exit.SUCCESS);
+    verify(scannerEngineBootstrapperFactory, never()).create(any(), any());
+    assertThat(logTester.logs()).anyMatch(l -> l.startsWith("No performance history in "));
+  }
+
+  @Test
+  void should_cancel_analysis_on_timeout() throws Exception {
+    Properties p = new Properties();
+    p.setProperty("sonar.scanner.timeout", "1");
+    when(conf.properties()).thenReturn(p);
+    when(cli.getInvokedFrom()).thenReturn("");
+    when(engine.analyze(any())).then(invocation -> {
+      Thread.sleep(60_000);
+      return true;
+    });
+
+    Main main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory);
+    main.analyze();
+
+    verify(exit).exit(Exit.TIMEOUT);
+    verify(result).close();
+    assertThat(logTester.logs(Level.ERROR)).contains("Cancelling the analysis: the timeout of the analysis has been reached (sonar.scanner.timeout)");
+    assertThat(logTester.logs()).contains("EXECUTION FAILURE");
+  }
+
+  @Test
+  void should_fail_before_bootstrap_on_missing_sources(@TempDir Path baseDir) {
+    Properties p = new Properties();
+    p.setProperty("sonar.projectBaseDir", baseDir.toString());
+    p.setProperty("sonar.sources", "src");
+    p.setProperty("sonar.scanner.preflight", "true");
+    when(conf.properties()).thenReturn(p);
+
+    Main main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory);
+    main.analyze();
+
+    verify(exit).exit(Exit.USER_ERROR);
+    verify(scannerEngineBootstrapperFactory, never()).create(any(), any());
+    assertThat(logTester.logs(Level.ERROR)).contains("Invalid analysis configuration (set sonar.scanner.preflight=false to skip this check):\n"
+      + "  - Project: sonar.sources does not exist: " + baseDir.resolve("src"));
+  }
+
+  @Test
+  void should_not_check_sources_of_multi_module_aggregator(@TempDir Path baseDir) throws Exception {
+    Files.createDirectories(baseDir.resolve("module1/src"));
+    Files.createDirectories(baseDir.resolve("module2/src"));
+    Properties p = new Properties();
+    p.setProperty("sonar.projectBaseDir", baseDir.toString());
+    p.setProperty("sonar.sources", "src");
+    p.setProperty("sonar.modules", "module1,module2");
+    p.setProperty("module1.sonar.projectBaseDir", baseDir.resolve("module1").toString());
+    p.setProperty("module1.sonar.sources", "src");
+    p.setProperty("module2.sonar.projectBaseDir", baseDir.resolve("module2").toString());
+    p.setProperty("module2.sonar.sources", "src");
+    p.setProperty("sonar.scanner.preflight", "true");
+    when(conf.properties()).thenReturn(p);
+    when(cli.getInvokedFrom()).thenReturn("");
+
+    Main main = new Main(exit, cli, conf, scannerEngineBootstrapperFactory);
+    main.analyze();
+
+    verify(exit).exit(Exit.SUCCESS);
+    verify(scannerEngineBootstrapperFactory).create(any(), any());
   }
 
   @Test
@@ -0,0 +1,148 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import testutils.LogTester;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class MetricsExporterTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  @TempDir
+  Path temp;
+
+  private final LogEventCounter logEventCounter = LogEventCounter.install();
+  private final Phases phases = new Phases();
+  private final Properties props = new Properties();
+
+  @AfterEach
+  void uninstall() {
+    logEventCounter.uninstall();
+  }
+
+  @Test
+  void should_serve_metrics_on_localhost() throws Exception {
+    props.setProperty("sonar.scanner.metricsPort", "0");
+    var exporter = new MetricsExporter(logEventCounter).start(props);
+    phases.addListener(exporter);
+    LoggerFactory.getLogger(getClass()).warn("something happened");
+
+    String body;
+    try (var phase = phases.start(Phases.ANALYSIS)) {
+      var address = exporter.address();
+      assertThat(address.getAddress().isLoopbackAddress()).isTrue();
+      var response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create("http://localhost:" + address.getPort() + "/metrics")).build(),
+        HttpResponse.BodyHandlers.ofString());
+      assertThat(response.statusCode()).isEqualTo(200);
+      assertThat(response.headers().firstValue("Content-Type")).hasValue("text/plain; version=0.0.4; charset=utf-8");
+      body = response.body();
+    } finally {
+      exporter.executionFinished(props, Exit.SUCCESS);
+    }
+
+    assertThat(body)
+      .contains("# TYPE sonar_scanner_jvm_heap_used_bytes gauge\nsonar_scanner_jvm_heap_used_bytes ")
+      .contains("sonar_scanner_jvm_gc_collections_total{gc=")
+      .contains("sonar_scanner_jvm_threads ")
+      .contains("sonar_scanner_phase_running_seconds{phase=\"analysis\"} ")
+      .contains("sonar_scanner_log_events_total{level=\"WARN\"} 1\n")
+      .doesNotContain("sonar_scanner_exit_status");
+  }
+
+  @Test
+  void should_write_final_snapshot_for_textfile_collector() throws Exception {
+    var textFile = temp.resolve("collector/sonar_scanner.prom");
+    props.setProperty("sonar.scanner.metricsTextFile", textFile.toString());
+    var exporter = new MetricsExporter(logEventCounter).start(props);
+    phases.addListener(exporter);
+
+    phases.start(Phases.BOOTSTRAP).close();
+    phases.executionFinished(props, Exit.SCANNER_ENGINE_ERROR);
+
+    assertThat(exporter.address()).isNull();
+    assertThat(Files.readString(textFile, UTF_8))
+      .contains("sonar_scanner_phase_duration_seconds{phase=\"bootstrap\"} ")
+      .contains("sonar_scanner_exit_status 3\n");
+    assertThat(textFile.resolveSibling("sonar_scanner.prom.tmp")).doesNotExist();
+  }
+
+  @Test
+  void should_count_log_events_by_level() {
+    var logger = LoggerFactory.getLogger(getClass());
+    logger.info("one");
+    logger.info("two");
+    logger.error("three");
+    logger.debug("not enabled");
+
+    assertThat(logEventCounter.count(ch.qos.logback.classic.Level.INFO)).isEqualTo(2);
+    assertThat(logEventCounter.count(ch.qos.logback.classic.Level.ERROR)).isEqualTo(1);
+    assertThat(logEventCounter.count(ch.qos.logback.classic.Level.DEBUG)).isZero();
+    assertThat(logEventCounter.total()).isEqualTo(3);
+  }
+
+  @Test
+  void should_not_fail_if_port_is_not_available() throws Exception {
+    props.setProperty("sonar.scanner.metricsPort", "0");
+    var first = new MetricsExporter(logEventCounter).start(props);
+    try {
+      props.setProperty("sonar.scanner.metricsPort", String.valueOf(first.address().getPort()));
+      var second = new MetricsExporter(logEventCounter).start(props);
+
+      assertThat(second.address()).isNull();
+      assertThat(logTester.logs(Level.WARN)).contains("Unable to start the metrics endpoint on port " + first.address().getPort());
+    } finally {
+      first.executionFinished(props, Exit.SUCCESS);
+    }
+  }
+
+  @Test
+  void should_fail_on_invalid_port() {
+    props.setProperty("sonar.scanner.metricsPort", "abc");
+    var exporter = new MetricsExporter(logEventCounter);
+
+    assertThatIllegalArgumentException().isThrownBy(() -> exporter.start(props))
+      .withMessage("Invalid value for property sonar.scanner.metricsPort: abc");
+  }
+
+  @Test
+  void should_be_enabled_by_properties() {
+    assertThat(MetricsExporter.isEnabled(props)).isFalse();
+    props.setProperty("sonar.scanner.metricsTextFile", "metrics.prom");
+    assertThat(MetricsExporter.isEnabled(props)).isTrue();
+  }
+}
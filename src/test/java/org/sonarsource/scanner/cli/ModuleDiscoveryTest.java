@@ -0,0 +1,185 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.event.Level;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ModuleDiscoveryTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  @TempDir
+  Path baseDir;
+
+  @Test
+  void should_build_module_tree() throws IOException {
+    createModule("b");
+    createModule("a/x");
+    createModule("a/x/y/z");
+    createModule("a/w");
+    Files.createDirectories(baseDir.resolve("c/d"));
+    Files.writeString(baseDir.resolve("sonar-project.properties"), "");
+
+    var modules = new ModuleDiscovery(ModuleDiscovery.DEFAULT_PRUNED_DIRECTORIES, List.of(), 10).discover(baseDir);
+
+    assertThat(modules).extracting(ModuleDiscovery.Module::id).containsExactly("a_w", "a_x", "b");
+    var ax = modules.get(1);
+    assertThat(ax.baseDir()).isEqualTo(baseDir.resolve("a/x"));
+    assertThat(ax.propertiesFile()).isEqualTo(baseDir.resolve("a/x/sonar-project.properties"));
+    assertThat(ax.children()).extracting(ModuleDiscovery.Module::id).containsExactly("y_z");
+    assertThat(ax.children().get(0).baseDir()).isEqualTo(baseDir.resolve("a/x/y/z"));
+  }
+
+  @Test
+  void should_prune_hidden_vendored_and_excluded_directories() throws IOException {
+    createModule("kept");
+    createModule(".git/hidden");
+    createModule("node_modules/lib");
+    createModule("kept/target/generated");
+    createModule("legacy/old");
+    createModule("src/generated");
+
+    var modules = new ModuleDiscovery(ModuleDiscovery.DEFAULT_PRUNED_DIRECTORIES, List.of("legacy", "**/generated"), 10).discover(baseDir);
+
+    assertThat(modules).extracting(ModuleDiscovery.Module::id).containsExactly("kept");
+    assertThat(modules.get(0).children()).isEmpty();
+  }
+
+  @Test
+  void should_prune_configured_directories() throws IOException {
+    createModule("build/generated");
+    createModule("vendor/lib");
+    createModule("out/lib");
+
+    var props = new Properties();
+    props.setProperty(ModuleDiscovery.PRUNED_DIRECTORIES, "out, vendor");
+    assertThat(ModuleDiscovery.create(props).discover(baseDir))
+      .extracting(ModuleDiscovery.Module::id).containsExactly("build_generated");
+
+    props.setProperty(ModuleDiscovery.PRUNED_DIRECTORIES, "");
+    assertThat(ModuleDiscovery.create(props).discover(baseDir))
+      .extracting(ModuleDiscovery.Module::id).containsExactly("build_generated", "out_lib", "vendor_lib");
+
+    assertThat(ModuleDiscovery.create(new Properties()).discover(baseDir))
+      .extracting(ModuleDiscovery.Module::id).containsExactly("out_lib");
+  }
+
+  @Test
+  void should_stop_at_max_depth() throws IOException {
+    createModule("a");
+    createModule("a/b/c");
+
+    assertThat(new ModuleDiscovery(ModuleDiscovery.DEFAULT_PRUNED_DIRECTORIES, List.of(), 2).discover(baseDir))
+      .extracting(ModuleDiscovery.Module::id).containsExactly("a");
+    assertThat(new ModuleDiscovery(ModuleDiscovery.DEFAULT_PRUNED_DIRECTORIES, List.of(), 3).discover(baseDir).get(0).children())
+      .extracting(ModuleDiscovery.Module::id).containsExactly("b_c");
+  }
+
+  @Test
+  void should_not_follow_symlinks() throws IOException {
+    assumeTrue(SystemUtils.IS_OS_UNIX);
+    createModule("a");
+    Files.createSymbolicLink(baseDir.resolve("link"), Paths.get("a"));
+
+    assertThat(new ModuleDiscovery(ModuleDiscovery.DEFAULT_PRUNED_DIRECTORIES, List.of(), 10).discover(baseDir))
+      .extracting(ModuleDiscovery.Module::id).containsExactly("a");
+  }
+
+  @Test
+  void should_replace_reserved_characters_in_identifiers() throws IOException {
+    createModule("lib.core");
+    createModule("a,b");
+
+    var found = new CopyOnWriteArrayList<String>();
+    var modules = new ModuleDiscovery(ModuleDiscovery.DEFAULT_PRUNED_DIRECTORIES, List.of(), 10).discover(baseDir, m -> found.add(m.id()));
+
+    assertThat(modules).extracting(ModuleDiscovery.Module::id).containsExactly("a_b", "lib_core");
+    assertThat(found).containsExactlyInAnyOrder("a_b", "lib_core");
+  }
+
+  @Test
+  void should_fail_on_duplicate_identifiers() throws IOException {
+    createModule("a/b_c");
+    createModule("a_b/c");
+
+    var discovery = new ModuleDiscovery(ModuleDiscovery.DEFAULT_PRUNED_DIRECTORIES, List.of(), 10);
+    assertThatThrownBy(() -> discovery.discover(baseDir))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("The directories '" + Paths.get("a", "b_c") + "' and '" + Paths.get("a_b", "c") + "' of " + baseDir
+        + " are both discovered as module 'a_b_c', rename one of them or exclude it with sonar.scanner.discoverModules.exclusions");
+  }
+
+  @Test
+  void should_skip_directories_that_cannot_be_listed() throws IOException {
+    assumeTrue(SystemUtils.IS_OS_UNIX);
+    createModule("a");
+    createModule("locked/b");
+    var locked = baseDir.resolve("locked");
+    Files.setPosixFilePermissions(locked, Set.of());
+    try {
+      // permissions do not apply to root
+      assumeFalse(Files.isReadable(locked));
+
+      assertThat(new ModuleDiscovery(ModuleDiscovery.DEFAULT_PRUNED_DIRECTORIES, List.of(), 10).discover(baseDir))
+        .extracting(ModuleDiscovery.Module::id).containsExactly("a");
+      assertThat(logTester.logs(Level.WARN)).anyMatch(l -> l.startsWith("Unable to list the directory " + locked));
+    } finally {
+      Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+    }
+  }
+
+  @Test
+  void should_read_properties() {
+    var props = new Properties();
+    assertThat(ModuleDiscovery.isEnabled(props)).isFalse();
+    props.setProperty(ModuleDiscovery.DISCOVER_MODULES, "true");
+    assertThat(ModuleDiscovery.isEnabled(props)).isTrue();
+
+    props.setProperty(ModuleDiscovery.MAX_DEPTH, "deep");
+    assertThatThrownBy(() -> ModuleDiscovery.create(props))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Invalid value for property sonar.scanner.discoverModules.maxDepth: deep");
+  }
+
+  private void createModule(String path) throws IOException {
+    var dir = Files.createDirectories(baseDir.resolve(path));
+    Files.writeString(dir.resolve("sonar-project.properties"), "");
+  }
+}
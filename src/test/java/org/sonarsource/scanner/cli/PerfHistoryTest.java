@@ -0,0 +1,195 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import com.google.gson.JsonObject;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import testutils.LogTester;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class PerfHistoryTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  @TempDir
+  Path userHome;
+
+  private final Properties props = new Properties();
+  private final EngineTimings engineTimings = EngineTimings.install();
+  private final Logger engineLogger = LoggerFactory.getLogger("engine");
+
+  @AfterEach
+  void uninstall() {
+    engineTimings.uninstall();
+  }
+
+  @Test
+  void should_store_history_per_project_and_branch() {
+    assertThat(PerfHistory.historyFile(props, Map.of())).isNull();
+
+    props.setProperty("sonar.projectKey", "org:my project");
+    assertThat(PerfHistory.historyFile(props, Map.of("SONAR_USER_HOME", userHome.toString())))
+      .isEqualTo(userHome.resolve("perf-history/org_my_project.jsonl"));
+
+    props.setProperty("sonar.branch.name", "feature/x");
+    props.setProperty("sonar.userHome", userHome.resolve("home").toString());
+    assertThat(PerfHistory.historyFile(props, Map.of()))
+      .isEqualTo(userHome.resolve("home/perf-history/org_my_project@feature_x.jsonl"));
+  }
+
+  @Test
+  void should_append_run_to_history() throws Exception {
+    props.setProperty("sonar.projectKey", "project");
+    props.setProperty("sonar.userHome", userHome.toString());
+    props.setProperty("module1.sonar.projectBaseDir", "module1");
+    var summary = new RunSummary();
+    var phases = new Phases().addListener(summary);
+    try (var phase = phases.start(Phases.ANALYSIS)) {
+      engineLogger.info("42 files indexed");
+    }
+
+    var perfHistory = PerfHistory.create(props, Map.of(), summary, engineTimings);
+    perfHistory.executionFinished(props, Exit.SUCCESS);
+    perfHistory.executionFinished(props, Exit.SUCCESS);
+
+    var runs = PerfHistory.read(userHome.resolve("perf-history/project.jsonl"));
+    assertThat(runs).hasSize(2);
+    var run = runs.get(0);
+    assertThat(run.get("exitStatus").getAsInt()).isZero();
+    assertThat(run.getAsJsonObject("phases").has(Phases.ANALYSIS)).isTrue();
+    assertThat(run.get("modules").getAsLong()).isEqualTo(1);
+    assertThat(run.get("files").getAsLong()).isEqualTo(42);
+    assertThat(run.get("peakHeapBytes").getAsLong()).isPositive();
+    assertThat(run.has("gcMs")).isTrue();
+  }
+
+  @Test
+  void should_warn_on_regression() throws Exception {
+    props.setProperty("sonar.projectKey", "project");
+    props.setProperty("sonar.userHome", userHome.toString());
+    var file = userHome.resolve("perf-history/project.jsonl");
+    writeHistory(file, 1L, 1L, 1L);
+
+    PerfHistory.create(props, Map.of(), slowSummary(), engineTimings).executionFinished(props, Exit.SUCCESS);
+
+    assertThat(logTester.logs(Level.WARN)).singleElement().asString()
+      .startsWith("This analysis took ")
+      .endsWith("more than the median of the previous analyses (0.001s)");
+  }
+
+  @Test
+  void should_not_warn_without_enough_history() throws Exception {
+    props.setProperty("sonar.projectKey", "project");
+    props.setProperty("sonar.userHome", userHome.toString());
+    writeHistory(userHome.resolve("perf-history/project.jsonl"), 1L, 1L);
+
+    PerfHistory.create(props, Map.of(), slowSummary(), engineTimings).executionFinished(props, Exit.SUCCESS);
+
+    assertThat(logTester.logs(Level.WARN)).isEmpty();
+  }
+
+  @Test
+  void should_compute_median_of_previous_successful_runs() {
+    List<JsonObject> runs = new ArrayList<>();
+    runs.add(run(100, Exit.SUCCESS));
+    runs.add(run(300, Exit.SUCCESS));
+    runs.add(run(5, Exit.SCANNER_ENGINE_ERROR));
+    runs.add(run(200, Exit.SUCCESS));
+    runs.add(run(1000, Exit.SUCCESS));
+
+    assertThat(PerfHistory.median(runs, 4, "timeMs")).isEqualTo(200L);
+    assertThat(PerfHistory.median(runs, 3, "timeMs")).isNull();
+
+    runs.add(run(400, Exit.SUCCESS));
+    assertThat(PerfHistory.median(runs, 5, "timeMs")).isEqualTo(250L);
+  }
+
+  @Test
+  void should_report_history() throws Exception {
+    props.setProperty("sonar.projectKey", "project");
+    props.setProperty("sonar.userHome", userHome.toString());
+    writeHistory(userHome.resolve("perf-history/project.jsonl"), 1000L, 1000L, 1000L, 1100L, 2000L);
+
+    PerfHistory.report(props, Map.of());
+
+    assertThat(logTester.logs()).hasSize(8);
+    assertThat(logTester.logs().get(0)).startsWith("Performance history (5 runs, regression threshold 20%): ");
+    assertThat(logTester.logs().get(4)).endsWith("1.100s  median 1.000s  +10%");
+    assertThat(logTester.logs().get(5)).endsWith("2.000s  median 1.000s  +100%  REGRESSION");
+    assertThat(logTester.logs().get(6)).isEqualTo("Phases of the last run:");
+    assertThat(logTester.logs().get(7)).isEqualTo("  " + Phases.ANALYSIS + "  2.000s  median 1.000s  +100%  REGRESSION");
+  }
+
+  @Test
+  void should_report_missing_project_key() {
+    PerfHistory.report(props, Map.of());
+    assertThat(logTester.logs()).containsExactly("No performance history: the project key is not defined");
+  }
+
+  @Test
+  void should_fail_on_invalid_threshold() {
+    props.setProperty("sonar.projectKey", "project");
+    props.setProperty("sonar.scanner.perfHistory.threshold", "high");
+    assertThatIllegalArgumentException().isThrownBy(() -> PerfHistory.create(props, Map.of(), new RunSummary(), engineTimings))
+      .withMessage("Invalid value for property sonar.scanner.perfHistory.threshold: high");
+  }
+
+  private static RunSummary slowSummary() throws InterruptedException {
+    var summary = new RunSummary();
+    Thread.sleep(10);
+    return summary;
+  }
+
+  private static void writeHistory(Path file, long... times) throws Exception {
+    Files.createDirectories(file.getParent());
+    var sb = new StringBuilder();
+    for (long time : times) {
+      sb.append(run(time, Exit.SUCCESS)).append('\n');
+    }
+    Files.writeString(file, sb.toString(), UTF_8);
+  }
+
+  private static JsonObject run(long timeMs, int exitStatus) {
+    var run = new JsonObject();
+    run.addProperty("time", "2026-01-01T00:00:00Z");
+    run.addProperty("exitStatus", exitStatus);
+    run.addProperty("timeMs", timeMs);
+    var phases = new JsonObject();
+    phases.addProperty(Phases.ANALYSIS, timeMs);
+    run.add("phases", phases);
+    return run;
+  }
+}
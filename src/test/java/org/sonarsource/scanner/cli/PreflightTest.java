@@ -0,0 +1,114 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PreflightTest {
+
+  @TempDir
+  Path baseDir;
+
+  private final Properties props = new Properties();
+
+  @BeforeEach
+  void prepare() throws Exception {
+    Files.createDirectories(baseDir.resolve("src"));
+    Files.createDirectories(baseDir.resolve("moduleA/src"));
+    Files.createFile(baseDir.resolve("moduleA/lib.jar"));
+    props.setProperty("sonar.projectBaseDir", baseDir.toString());
+  }
+
+  @Test
+  void should_accept_existing_paths_and_patterns() {
+    props.setProperty("sonar.sources", "src, " + baseDir.resolve("src"));
+    props.setProperty("sonar.java.libraries", "lib/**/*.jar");
+    props.setProperty("moduleA.sonar.projectBaseDir", baseDir.resolve("moduleA").toString());
+    props.setProperty("moduleA.sonar.sources", "src");
+    props.setProperty("moduleA.sonar.java.libraries", "lib.jar,libs/*.jar");
+
+    assertThat(Preflight.problems(props)).isEmpty();
+  }
+
+  @Test
+  void should_report_all_problems() {
+    props.setProperty("sonar.sources", "src,missing");
+    props.setProperty("sonar.tests", "test");
+    props.setProperty("moduleA.sonar.projectBaseDir", baseDir.resolve("moduleA").toString());
+    props.setProperty("moduleA.sonar.sources", "src,lib.jar");
+    props.setProperty("moduleA.sonar.java.binaries", "target/classes");
+    props.setProperty("moduleB.sonar.projectBaseDir", baseDir.resolve("moduleA/lib.jar").toString());
+
+    assertThat(Preflight.problems(props)).containsExactly(
+      "Module 'moduleA': sonar.java.binaries does not exist: " + baseDir.resolve("moduleA/target/classes"),
+      "Module 'moduleB': moduleB.sonar.projectBaseDir is not a directory: " + baseDir.resolve("moduleA/lib.jar"),
+      "Project: sonar.sources does not exist: " + baseDir.resolve("missing"),
+      "Project: sonar.tests does not exist: " + baseDir.resolve("test"));
+  }
+
+  @Test
+  void should_not_check_paths_of_aggregators() {
+    props.setProperty("sonar.modules", "moduleA");
+    props.setProperty("sonar.sources", "src,lib.jar");
+    props.setProperty("moduleA.sonar.projectBaseDir", baseDir.resolve("moduleA").toString());
+    props.setProperty("moduleA.sonar.sources", "src,lib.jar,missing");
+
+    assertThat(Preflight.problems(props)).containsExactly(
+      "Module 'moduleA': sonar.sources does not exist: " + baseDir.resolve("moduleA/missing"));
+  }
+
+  @Test
+  void should_check_paths_of_file_lists() throws Exception {
+    Files.writeString(baseDir.resolve("sources.txt"), "src\nmissing\n");
+    props.setProperty("sonar.sources", "@file:sources.txt");
+    props.setProperty("moduleA.sonar.projectBaseDir", baseDir.resolve("moduleA").toString());
+    props.setProperty("moduleA.sonar.sources", "@file:missing.txt");
+
+    assertThat(Preflight.problems(props)).containsExactly(
+      "Module 'moduleA': sonar.sources file list does not exist: " + baseDir.resolve("missing.txt"),
+      "Project: sonar.sources does not exist: " + baseDir.resolve("missing"));
+  }
+
+  @Test
+  void should_fail_with_all_problems() {
+    props.setProperty("sonar.sources", "missing1,missing2");
+
+    assertThatThrownBy(() -> Preflight.check(props))
+      .isInstanceOf(Preflight.PreflightException.class)
+      .hasMessage("Invalid analysis configuration (set sonar.scanner.preflight=false to skip this check):\n"
+        + "  - Project: sonar.sources does not exist: " + baseDir.resolve("missing1") + "\n"
+        + "  - Project: sonar.sources does not exist: " + baseDir.resolve("missing2"));
+  }
+
+  @Test
+  void should_be_disabled_by_default() {
+    assertThat(Preflight.isEnabled(props)).isFalse();
+    props.setProperty("sonar.scanner.preflight", "true");
+    assertThat(Preflight.isEnabled(props)).isTrue();
+  }
+}
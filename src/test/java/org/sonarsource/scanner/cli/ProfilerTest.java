@@ -0,0 +1,143 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProfilerTest {
+
+  @TempDir
+  Path workDir;
+
+  @Test
+  void should_record_phases_and_write_collapsed_stacks() throws Exception {
+    var phases = new Phases();
+    var profiler = Profiler.start();
+    phases.addListener(profiler);
+
+    try (var phase = phases.start(Phases.CONFIGURATION_FILE, "sonar-project.properties")) {
+      busyLoop();
+    }
+    profiler.stop(workDir);
+
+    Path recording = workDir.resolve("scanner-profile.jfr");
+    assertThat(recording).isRegularFile();
+    assertThat(workDir.resolve("scanner-profile.jfr.collapsed")).isRegularFile();
+    assertThat(RecordingFile.readAllEvents(recording))
+      .filteredOn(e -> e.getEventType().getName().equals("org.sonarsource.scanner.cli.Phase"))
+      .singleElement()
+      .satisfies(e -> {
+        assertThat(e.getString("phase")).isEqualTo(Phases.CONFIGURATION_FILE);
+        assertThat(e.getString("detail")).isEqualTo("sonar-project.properties");
+      });
+  }
+
+  @Test
+  void should_collapse_engine_recording_if_present() throws Exception {
+    var engineProfiler = Profiler.start();
+    busyLoop();
+    engineProfiler.stop(workDir);
+    Files.move(workDir.resolve("scanner-profile.jfr"), workDir.resolve("scanner-engine-profile.jfr"));
+
+    Profiler.start().stop(workDir);
+
+    assertThat(workDir.resolve("scanner-engine-profile.jfr.collapsed")).isRegularFile();
+  }
+
+  @Test
+  void should_write_one_collapsed_stack_per_line() throws Exception {
+    var profiler = Profiler.start();
+    busyLoop();
+    profiler.stop(workDir);
+
+    var lines = Files.readAllLines(workDir.resolve("scanner-profile.jfr.collapsed"));
+    assertThat(lines).allMatch(l -> l.matches("[^ ;]+(;[^ ;]+)* \\d+"));
+  }
+
+  @Test
+  void should_ask_engine_to_record() {
+    var props = new Properties();
+    props.setProperty("sonar.projectBaseDir", workDir.toString());
+    props.setProperty("sonar.scanner.javaOpts", "-Xmx1g");
+
+    var profiler = Profiler.start();
+    profiler.configureEngine(props);
+    profiler.stop(workDir);
+
+    assertThat(props.getProperty("sonar.scanner.javaOpts"))
+      .startsWith("-Xmx1g -XX:StartFlightRecording=")
+      .endsWith("filename=" + workDir.resolve(".scannerwork").resolve("scanner-engine-profile.jfr"));
+  }
+
+  @Test
+  void should_ask_engine_to_record_in_temp_dir_if_work_dir_contains_a_space() throws Exception {
+    var baseDir = Files.createDirectories(workDir.resolve("my project"));
+    var props = new Properties();
+    props.setProperty("sonar.projectBaseDir", baseDir.toString());
+
+    var profiler = Profiler.start();
+    profiler.configureEngine(props);
+
+    var tempFile = profiler.engineRecordingTempFile();
+    assertThat(tempFile).isNotNull();
+    assertThat(props.getProperty("sonar.scanner.javaOpts"))
+      .doesNotContain("my project")
+      .endsWith("filename=" + tempFile);
+
+    // recording of the engine, dumped when it exits
+    var engineProfiler = Profiler.start();
+    busyLoop();
+    engineProfiler.stop(workDir);
+    Files.move(workDir.resolve("scanner-profile.jfr"), tempFile);
+
+    var engineWorkDir = baseDir.resolve(".scannerwork");
+    profiler.stop(engineWorkDir);
+
+    assertThat(tempFile).doesNotExist();
+    assertThat(engineWorkDir.resolve("scanner-engine-profile.jfr")).isRegularFile();
+    assertThat(engineWorkDir.resolve("scanner-engine-profile.jfr.collapsed")).isRegularFile();
+  }
+
+  @Test
+  void should_be_enabled_by_property() {
+    var props = new Properties();
+    assertThat(Profiler.isEnabled(props)).isFalse();
+    props.setProperty("sonar.scanner.profile", "true");
+    assertThat(Profiler.isEnabled(props)).isTrue();
+  }
+
+  private static double busyLoop() {
+    double result = 0;
+    long end = System.nanoTime() + 200_000_000L;
+    while (System.nanoTime() < end) {
+      for (int i = 1; i < 10_000; i++) {
+        result += Math.sqrt(i) / i;
+      }
+    }
+    return result;
+  }
+}
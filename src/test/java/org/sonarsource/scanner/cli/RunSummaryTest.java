@@ -0,0 +1,88 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import testutils.LogTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RunSummaryTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  @TempDir
+  Path temp;
+
+  private final Phases phases = new Phases();
+  private final RunSummary summary = new RunSummary();
+
+  @Test
+  void should_write_phases_and_sections() throws Exception {
+    phases.addListener(summary);
+    summary.addSection("custom", () -> new JsonPrimitive("value"));
+    try (var phase = phases.start(Phases.CONFIGURATION)) {
+      try (var nested = phases.start(Phases.CONFIGURATION_FILE, "sonar-project.properties")) {
+        // nothing
+      }
+    }
+    var file = temp.resolve("out/summary.json");
+    var props = new Properties();
+    props.setProperty("sonar.scanner.summaryFile", file.toString());
+
+    phases.executionFinished(props, Exit.SCANNER_ENGINE_ERROR);
+
+    var json = JsonParser.parseString(Files.readString(file)).getAsJsonObject();
+    assertThat(json.get("exitStatus").getAsInt()).isEqualTo(Exit.SCANNER_ENGINE_ERROR);
+    assertThat(json.get("custom").getAsString()).isEqualTo("value");
+    var phaseArray = json.getAsJsonArray("phases");
+    assertThat(phaseArray).hasSize(2);
+    assertThat(phaseArray.get(0).getAsJsonObject().get("name").getAsString()).isEqualTo(Phases.CONFIGURATION_FILE);
+    assertThat(phaseArray.get(0).getAsJsonObject().get("detail").getAsString()).isEqualTo("sonar-project.properties");
+    assertThat(phaseArray.get(1).getAsJsonObject().get("name").getAsString()).isEqualTo(Phases.CONFIGURATION);
+  }
+
+  @Test
+  void should_not_write_summary_by_default() {
+    summary.executionFinished(new Properties(), Exit.SUCCESS);
+    summary.executionFinished(null, Exit.SUCCESS);
+    assertThat(temp).isEmptyDirectory();
+  }
+
+  @Test
+  void should_warn_if_summary_cannot_be_written() throws Exception {
+    var file = temp.resolve("file");
+    Files.createFile(file);
+    var props = new Properties();
+    props.setProperty("sonar.scanner.summaryFile", file.resolve("summary.json").toString());
+
+    summary.executionFinished(props, Exit.SUCCESS);
+
+    assertThat(logTester.logs()).anyMatch(l -> l.startsWith("Unable to write the run summary to "));
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import testutils.LogTester;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class StallDetectorTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void should_write_thread_dumps_when_nothing_is_logged() throws Exception {
+    var diagnosticsDir = temp.resolve("diagnostics");
+    try (var detector = new StallDetector(Duration.ofMillis(100), Duration.ofSeconds(60), true, diagnosticsDir)) {
+      waitForFiles(diagnosticsDir, 2);
+    }
+
+    var files = list(diagnosticsDir);
+    assertThat(files).anyMatch(f -> f.getFileName().toString().startsWith("threads-"));
+    assertThat(files).anyMatch(f -> f.getFileName().toString().startsWith("heap-histogram-"));
+    var threadDump = files.stream().filter(f -> f.getFileName().toString().startsWith("threads-")).findFirst().get();
+    assertThat(Files.readString(threadDump, UTF_8))
+      .startsWith("No log for ")
+      .contains("\"sonar-scanner-stall-detector\"")
+      .contains(StallDetector.class.getName() + ".threadDump(");
+    assertThat(logTester.logs()).anyMatch(l -> l.contains("the analysis may be stalled. Thread dump written to "));
+  }
+
+  @Test
+  void should_not_write_anything_while_logging() throws Exception {
+    var diagnosticsDir = temp.resolve("diagnostics");
+    var logger = LoggerFactory.getLogger(getClass());
+    try (var detector = new StallDetector(Duration.ofMillis(500), Duration.ofSeconds(60), false, diagnosticsDir)) {
+      for (int i = 0; i < 20; i++) {
+        logger.info("progress {}", i);
+        Thread.sleep(50);
+      }
+    }
+    assertThat(diagnosticsDir).doesNotExist();
+  }
+
+  @Test
+  void should_be_configured_in_seconds() {
+    var props = new Properties();
+    assertThat(StallDetector.isEnabled(props)).isFalse();
+    props.setProperty("sonar.scanner.stallTimeout", "0");
+    assertThat(StallDetector.isEnabled(props)).isTrue();
+    assertThatIllegalArgumentException().isThrownBy(() -> StallDetector.start(props))
+      .withMessage("Invalid value for property sonar.scanner.stallTimeout: 0 (expected a number of seconds)");
+    props.setProperty("sonar.scanner.stallTimeout", "600");
+    props.setProperty("sonar.scanner.stallDumpInterval", "1m");
+    assertThatIllegalArgumentException().isThrownBy(() -> StallDetector.start(props))
+      .withMessage("Invalid value for property sonar.scanner.stallDumpInterval: 1m (expected a number of seconds)");
+  }
+
+  private static void waitForFiles(Path dir, int count) throws Exception {
+    var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    while (System.nanoTime() < deadline) {
+      if (Files.isDirectory(dir) && list(dir).size() >= count) {
+        return;
+      }
+      Thread.sleep(20);
+    }
+  }
+
+  private static List<Path> list(Path dir) throws Exception {
+    try (var files = Files.list(dir)) {
+      return files.collect(Collectors.toList());
+    }
+  }
+}
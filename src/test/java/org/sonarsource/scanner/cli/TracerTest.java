@@ -0,0 +1,158 @@
+/*
+ * SonarScanner CLI
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.cli;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.event.Level;
+import testutils.LogTester;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TracerTest {
+
+  @RegisterExtension
+  LogTester logTester = new LogTester();
+
+  private static final String TRACE_ID = "0af7651916cd43dd8448eb211c80319c";
+  private static final String PARENT_SPAN_ID = "b7ad6b7169203331";
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void should_export_nested_spans_to_file() throws IOException {
+    var tracer = new Tracer(Map.of());
+    var phases = new Phases().addListener(tracer);
+    try (var configuration = phases.start(Phases.CONFIGURATION)) {
+      phases.start(Phases.CONFIGURATION_FILE, "module1/sonar-project.properties").close();
+      phases.start(Phases.CONFIGURATION_FILE, "module2/sonar-project.properties").close();
+    }
+    phases.start(Phases.BOOTSTRAP).close();
+
+    var traceFile = temp.resolve("trace.json");
+    var props = new Properties();
+    props.setProperty("sonar.scanner.traceFile", traceFile.toString());
+    phases.executionFinished(props, Exit.SUCCESS);
+
+    var spans = spans(Files.readString(traceFile, UTF_8));
+    assertThat(spans).extracting(s -> s.get("name").getAsString())
+      .containsExactly("configuration-file", "configuration-file", "configuration", "bootstrap", "sonar-scanner");
+    assertThat(spans).allMatch(s -> s.get("traceId").getAsString().equals(tracer.traceId()));
+
+    var root = spans.get(4);
+    var configuration = spans.get(2);
+    assertThat(root.has("parentSpanId")).isFalse();
+    assertThat(configuration.get("parentSpanId").getAsString()).isEqualTo(root.get("spanId").getAsString());
+    assertThat(spans.get(0).get("parentSpanId").getAsString()).isEqualTo(configuration.get("spanId").getAsString());
+    assertThat(spans.get(0).getAsJsonArray("attributes").get(0).getAsJsonObject().getAsJsonObject("value").get("stringValue").getAsString())
+      .isEqualTo("module1/sonar-project.properties");
+    assertThat(Long.parseLong(configuration.get("endTimeUnixNano").getAsString()))
+      .isGreaterThanOrEqualTo(Long.parseLong(configuration.get("startTimeUnixNano").getAsString()));
+    assertThat(root.getAsJsonObject("status").get("code").getAsInt()).isEqualTo(1);
+  }
+
+  @Test
+  void should_attach_to_pipeline_trace() throws IOException {
+    var tracer = new Tracer(Map.of("TRACEPARENT", "00-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-01"));
+
+    var traceFile = temp.resolve("trace.json");
+    var props = new Properties();
+    props.setProperty("sonar.scanner.traceFile", traceFile.toString());
+    tracer.executionFinished(props, Exit.SCANNER_ENGINE_ERROR);
+
+    var root = spans(Files.readString(traceFile, UTF_8)).get(0);
+    assertThat(root.get("traceId").getAsString()).isEqualTo(TRACE_ID);
+    assertThat(root.get("parentSpanId").getAsString()).isEqualTo(PARENT_SPAN_ID);
+    assertThat(root.getAsJsonObject("status").get("code").getAsInt()).isEqualTo(2);
+  }
+
+  @Test
+  void should_ignore_invalid_traceparent() {
+    var tracer = new Tracer(Map.of("TRACEPARENT", "invalid"));
+
+    assertThat(tracer.traceId()).hasSize(32).isNotEqualTo(TRACE_ID);
+  }
+
+  @Test
+  void should_not_export_if_not_configured() throws IOException {
+    new Tracer(Map.of()).executionFinished(new Properties(), Exit.SUCCESS);
+
+    try (var files = Files.list(temp)) {
+      assertThat(files).isEmpty();
+    }
+  }
+
+  @Test
+  void should_export_to_collector_endpoint() throws IOException {
+    List<String> received = new CopyOnWriteArrayList<>();
+    var collector = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    collector.createContext("/v1/traces", exchange -> {
+      received.add(exchange.getRequestHeaders().getFirst("Content-Type") + " " + new String(exchange.getRequestBody().readAllBytes(), UTF_8));
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+    collector.start();
+    try {
+      var props = new Properties();
+      props.setProperty("sonar.scanner.traceEndpoint", "http://localhost:" + collector.getAddress().getPort() + "/v1/traces");
+      new Tracer(Map.of()).executionFinished(props, Exit.SUCCESS);
+    } finally {
+      collector.stop(0);
+    }
+
+    assertThat(received).singleElement().asString().startsWith("application/json {\"resourceSpans\":");
+  }
+
+  @Test
+  void should_not_fail_if_collector_is_unreachable() {
+    var props = new Properties();
+    props.setProperty("sonar.scanner.traceEndpoint", "http://localhost:1/v1/traces");
+
+    new Tracer(Map.of()).executionFinished(props, Exit.SUCCESS);
+
+    assertThat(logTester.logs(Level.WARN)).contains("Unable to export the trace to http://localhost:1/v1/traces");
+  }
+
+  private static List<JsonObject> spans(String json) {
+    var spans = JsonParser.parseString(json).getAsJsonObject()
+      .getAsJsonArray("resourceSpans").get(0).getAsJsonObject()
+      .getAsJsonArray("scopeSpans").get(0).getAsJsonObject()
+      .getAsJsonArray("spans");
+    List<JsonObject> result = new ArrayList<>();
+    spans.forEach(s -> result.add(s.getAsJsonObject()));
+    return result;
+  }
+}